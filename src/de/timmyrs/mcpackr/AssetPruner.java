@@ -0,0 +1,243 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes models and block and item textures from a port which no blockstate or model in it references and which are in folders the game doesn't read them from in the port's version, like custom model folders or the texture folders of other versions.
+ */
+class AssetPruner
+{
+	/**
+	 * Paths relative to {@code assets/minecraft/} of block and item textures which the game loads without a model referencing them.
+	 */
+	static final List<String> DEFAULT_ALLOW_LIST = Collections.unmodifiableList(Arrays.asList(
+			"textures/block/water_", "textures/blocks/water_",
+			"textures/block/lava_", "textures/blocks/lava_",
+			"textures/block/fire_", "textures/blocks/fire_",
+			"textures/block/destroy_stage_", "textures/blocks/destroy_stage_",
+			"textures/item/empty_", "textures/items/empty_",
+			"textures/item/barrier", "textures/items/barrier",
+			"textures/item/compass", "textures/items/compass",
+			"textures/item/clock", "textures/items/clock"
+	));
+	private static final String ROOT = "assets/minecraft/";
+	private final RawZipFile zip;
+	private final PackFormat packFormat;
+	private final Collection<String> allowList;
+	private final HashSet<String> reachable = new HashSet<>();
+	private final ArrayDeque<String> queue = new ArrayDeque<>();
+
+	AssetPruner(RawZipFile zip, PackFormat packFormat, Collection<String> allowList)
+	{
+		this.zip = zip;
+		this.packFormat = packFormat;
+		this.allowList = allowList;
+	}
+
+	/**
+	 * @return The names of the entries which are not needed by the port.
+	 * @throws JsonParseException If a blockstate or model can't be parsed, so it's unknown what it references.
+	 */
+	List<String> findPrunable() throws IOException
+	{
+		for(String name : this.zip.entries.keySet())
+		{
+			if(name.endsWith(".json") && (name.startsWith(ROOT + "blockstates/") || name.startsWith(ROOT + "models/item/")))
+			{
+				this.reach(name);
+			}
+		}
+		while(!this.queue.isEmpty())
+		{
+			final String name = this.queue.poll();
+			final JsonElement json = ResourcePack.parseJsonElement(this.zip.read(this.zip.entries.get(name)));
+			if(!json.isJsonObject())
+			{
+				throw new JsonParseException(name + " is not a JSON object.");
+			}
+			final List<String> references;
+			if(name.startsWith(ROOT + "blockstates/"))
+			{
+				references = blockstateReferences(json.getAsJsonObject(), this.packFormat);
+			}
+			else
+			{
+				references = modelReferences(json.getAsJsonObject());
+			}
+			for(String reference : references)
+			{
+				this.reach(reference);
+			}
+		}
+		final ArrayList<String> pruned = new ArrayList<>();
+		for(String name : this.zip.entries.keySet())
+		{
+			if(this.isPrunable(name))
+			{
+				pruned.add(name);
+			}
+		}
+		return pruned;
+	}
+
+	private void reach(String name)
+	{
+		if(this.reachable.add(name) && name.endsWith(".json") && this.zip.entries.containsKey(name))
+		{
+			this.queue.add(name);
+		}
+	}
+
+	/**
+	 * @return The entry names of the models the given blockstate uses.
+	 */
+	static List<String> blockstateReferences(JsonObject blockstate, PackFormat packFormat)
+	{
+		final ArrayList<String> references = new ArrayList<>();
+		final ArrayList<JsonElement> models = new ArrayList<>();
+		if(blockstate.get("variants") != null && blockstate.get("variants").isJsonObject())
+		{
+			for(Map.Entry<String, JsonElement> variant : blockstate.get("variants").getAsJsonObject().entrySet())
+			{
+				models.add(variant.getValue());
+			}
+		}
+		if(blockstate.get("multipart") != null && blockstate.get("multipart").isJsonArray())
+		{
+			for(JsonElement part : blockstate.get("multipart").getAsJsonArray())
+			{
+				if(part.isJsonObject() && part.getAsJsonObject().get("apply") != null)
+				{
+					models.add(part.getAsJsonObject().get("apply"));
+				}
+			}
+		}
+		for(JsonElement model : models)
+		{
+			final JsonArray array;
+			if(model.isJsonArray())
+			{
+				array = model.getAsJsonArray();
+			}
+			else
+			{
+				array = new JsonArray();
+				array.add(model);
+			}
+			for(JsonElement props : array)
+			{
+				if(props.isJsonObject() && props.getAsJsonObject().get("model") != null)
+				{
+					final String path = stripNamespace(props.getAsJsonObject().get("model").getAsString());
+					if(path != null)
+					{
+						// Before 1.13, blockstates referenced models relative to models/block/.
+						references.add(ROOT + "models/" + (packFormat.id < 4 ? "block/" : "") + path + ".json");
+					}
+				}
+			}
+		}
+		return references;
+	}
+
+	/**
+	 * @return The entry names of the parent, textures and override models the given model uses.
+	 */
+	static List<String> modelReferences(JsonObject model)
+	{
+		final ArrayList<String> references = new ArrayList<>();
+		if(model.get("parent") != null)
+		{
+			final String parent = stripNamespace(model.get("parent").getAsString());
+			if(parent != null)
+			{
+				references.add(ROOT + "models/" + parent + ".json");
+			}
+		}
+		if(model.get("textures") != null && model.get("textures").isJsonObject())
+		{
+			for(Map.Entry<String, JsonElement> texture : model.get("textures").getAsJsonObject().entrySet())
+			{
+				final String path = stripNamespace(texture.getValue().getAsString());
+				if(path != null && !path.startsWith("#"))
+				{
+					references.add(ROOT + "textures/" + path + ".png");
+				}
+			}
+		}
+		if(model.get("overrides") != null && model.get("overrides").isJsonArray())
+		{
+			for(JsonElement override : model.get("overrides").getAsJsonArray())
+			{
+				if(override.isJsonObject() && override.getAsJsonObject().get("model") != null)
+				{
+					final String path = stripNamespace(override.getAsJsonObject().get("model").getAsString());
+					if(path != null)
+					{
+						references.add(ROOT + "models/" + path + ".json");
+					}
+				}
+			}
+		}
+		return references;
+	}
+
+	/**
+	 * @return The given resource location without the "minecraft:" namespace or null if it's in another namespace.
+	 */
+	static String stripNamespace(String location)
+	{
+		if(location.startsWith("minecraft:"))
+		{
+			return location.substring(10);
+		}
+		return (location.contains(":") ? null : location);
+	}
+
+	private boolean isPrunable(String name)
+	{
+		if(!name.startsWith(ROOT))
+		{
+			return false;
+		}
+		final String path = name.substring(ROOT.length());
+		if(path.endsWith(".png.mcmeta"))
+		{
+			return this.isPrunable(name.substring(0, name.length() - 7));
+		}
+		if(path.startsWith("models/") ? !path.endsWith(".json") : !(path.endsWith(".png") && (path.startsWith("textures/block/") || path.startsWith("textures/blocks/") || path.startsWith("textures/item/") || path.startsWith("textures/items/"))))
+		{
+			return false;
+		}
+		for(String allowed : this.allowList)
+		{
+			if(path.startsWith(allowed))
+			{
+				return false;
+			}
+		}
+		return !this.reachable.contains(name) && !this.vanillaCanReference(path);
+	}
+
+	/**
+	 * Without the game's own blockstates and models it's unknown which of the pack's block and item models and textures they reference,
+	 * e.g. the vanilla stairs and slabs of a block use its texture and 1.13+ item models use the block model of the same name, so everything in the folders the game reads them from in this version is kept.
+	 */
+	private boolean vanillaCanReference(String path)
+	{
+		return path.startsWith("models/block/") || path.startsWith("models/item/") || path.startsWith("textures/" + (this.packFormat.id < 4 ? "blocks/" : "block/")) || path.startsWith("textures/" + (this.packFormat.id < 4 ? "items/" : "item/"));
+	}
+}
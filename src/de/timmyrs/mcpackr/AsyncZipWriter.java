@@ -0,0 +1,167 @@
+package de.timmyrs.mcpackr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last stage of the packing pipeline: entries are handed over through a bounded queue and deflated and written on a separate thread, so the transforms don't have to wait for the compression.
+ * Once writing has failed, the thread stops taking entries and every further call fails fast with the cause instead of waiting for the queue.
+ */
+class AsyncZipWriter implements Closeable
+{
+	private static final Entry END = new Entry(null, null, null, null);
+	/**
+	 * How long a full queue is waited on before checking whether the writer has failed in the meantime.
+	 */
+	private static final long FAILURE_CHECK_MILLIS = 100;
+	private final ArrayBlockingQueue<Entry> queue;
+	private final Thread thread;
+	private final BlobCache cache;
+	private volatile IOException exception;
+
+	/**
+	 * @param cache The cache to store compressed entries in, or null.
+	 */
+	AsyncZipWriter(final OutputStream out, int capacity, BlobCache cache)
+	{
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.cache = cache;
+		this.thread = new DaemonThreadFactory("MCPackr writer").newThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try(RawZipWriter zip = new RawZipWriter(out))
+				{
+					for(Entry entry = queue.take(); entry != END; entry = queue.take())
+					{
+						if(entry.blob != null)
+						{
+							zip.write(entry.name, entry.blob);
+						}
+						else
+						{
+							final CompressedBlob blob = zip.compress(entry.bytes);
+							zip.write(entry.name, blob);
+							if(entry.cacheKey != null)
+							{
+								AsyncZipWriter.this.cache.put(entry.cacheKey, blob);
+							}
+						}
+					}
+				}
+				catch(IOException e)
+				{
+					exception = e;
+				}
+				catch(InterruptedException e)
+				{
+					exception = new InterruptedIOException();
+				}
+				catch(RuntimeException | Error e)
+				{
+					exception = new IOException("Failed to write the zip", e);
+				}
+			}
+		});
+		this.thread.start();
+	}
+
+	/**
+	 * Queues an entry to be compressed and written, waiting if the queue is full.
+	 *
+	 * @throws IOException If writing a previous entry has failed.
+	 */
+	void write(String name, byte[] bytes) throws IOException
+	{
+		this.put(new Entry(name, bytes, null, null));
+	}
+
+	/**
+	 * Queues an entry to be compressed, written, and then stored in the cache under the given key, waiting if the queue is full.
+	 *
+	 * @throws IOException If writing a previous entry has failed.
+	 */
+	void write(String name, byte[] bytes, String cacheKey) throws IOException
+	{
+		this.put(new Entry(name, bytes, (this.cache == null ? null : cacheKey), null));
+	}
+
+	/**
+	 * Queues an entry which has already been compressed, waiting if the queue is full.
+	 *
+	 * @throws IOException If writing a previous entry has failed.
+	 */
+	void write(String name, CompressedBlob blob) throws IOException
+	{
+		this.put(new Entry(name, null, null, blob));
+	}
+
+	private void put(Entry entry) throws IOException
+	{
+		try
+		{
+			do
+			{
+				if(this.exception != null)
+				{
+					throw this.exception;
+				}
+			}
+			while(!this.queue.offer(entry, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS));
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Waits for all queued entries to be written and closes the zip.
+	 *
+	 * @throws IOException If writing any entry or closing the zip has failed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			// The writer only stops taking entries when it has failed, in which case there is nothing left to wait for but the thread.
+			//noinspection StatementWithEmptyBody
+			while(this.exception == null && !this.queue.offer(END, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+			{
+			}
+			this.thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		if(this.exception != null)
+		{
+			throw this.exception;
+		}
+	}
+
+	private static class Entry
+	{
+		final String name;
+		final byte[] bytes;
+		final String cacheKey;
+		final CompressedBlob blob;
+
+		Entry(String name, byte[] bytes, String cacheKey, CompressedBlob blob)
+		{
+			this.name = name;
+			this.bytes = bytes;
+			this.cacheKey = cacheKey;
+			this.blob = blob;
+		}
+	}
+}
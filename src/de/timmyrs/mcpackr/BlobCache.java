@@ -0,0 +1,294 @@
+package de.timmyrs.mcpackr;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * An on-disk cache of compressed entries, keyed by a hash of an entry's source bytes and the transform applied to them, which can be shared by any number of resource packs, runs, and processes.
+ * When the cache grows beyond its maximum size, the least recently used entries are deleted.
+ */
+class BlobCache
+{
+	/**
+	 * Part of every key, so that entries written by older versions of the transforms are never used.
+	 * It has to be increased whenever a transform or the conversion tables change.
+	 */
+	private static final String VERSION = "1";
+	private static final int MAGIC = 0x4d435042;
+	private static final ConcurrentHashMap<String, BlobCache> caches = new ConcurrentHashMap<>();
+	final File folder;
+	final long maxSize;
+	private final AtomicLong size = new AtomicLong();
+
+	private BlobCache(File folder, long maxSize)
+	{
+		this.folder = folder;
+		this.maxSize = maxSize;
+		for(File file : this.listFiles())
+		{
+			this.size.addAndGet(file.length());
+		}
+	}
+
+	/**
+	 * Returns the cache in the given folder, so that all resource packs using the same folder in this JVM share the size accounting.
+	 */
+	static BlobCache open(File folder, long maxSize) throws IOException
+	{
+		final String path = folder.getCanonicalPath();
+		BlobCache cache = caches.get(path);
+		if(cache == null || cache.maxSize != maxSize)
+		{
+			if(!folder.isDirectory() && !folder.mkdirs())
+			{
+				throw new IOException("Failed to create " + folder.getPath());
+			}
+			cache = new BlobCache(folder, maxSize);
+			caches.put(path, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * @param transform Identifies what is done to the source bytes, including anything the result depends on, e.g. the source and target pack format.
+	 * @param source    The bytes the entry is created from.
+	 * @return The key for the entry created from the given source bytes using the given transform.
+	 */
+	static String key(String transform, byte[] source)
+	{
+		try
+		{
+			final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			sha1.update((VERSION + " " + transform + "\n").getBytes(Charset.forName("UTF-8")));
+			sha1.update(source);
+			return PackResult.toHex(sha1.digest());
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private File file(String key)
+	{
+		return new File(this.folder, key.substring(0, 2) + "/" + key);
+	}
+
+	/**
+	 * @return The cached entry or null if it isn't cached or is corrupt, in which case it's deleted.
+	 */
+	CompressedBlob get(String key)
+	{
+		final File file = this.file(key);
+		if(!file.isFile())
+		{
+			return null;
+		}
+		final ByteBuffer buffer;
+		try
+		{
+			buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+		if(buffer.remaining() >= 17 && buffer.getInt() == MAGIC)
+		{
+			final int method = buffer.get();
+			final long crc = buffer.getInt() & 0xFFFFFFFFL;
+			final long size = buffer.getLong();
+			final byte[] data = new byte[buffer.remaining()];
+			buffer.get(data);
+			final CompressedBlob blob = new CompressedBlob(method, crc, size, data);
+			if(isIntact(blob))
+			{
+				//noinspection ResultOfMethodCallIgnored
+				file.setLastModified(System.currentTimeMillis());
+				return blob;
+			}
+		}
+		LoggerFactory.getLogger(BlobCache.class).warn("Deleting corrupt cache entry " + key);
+		final long length = file.length();
+		if(file.delete())
+		{
+			this.size.addAndGet(-length);
+		}
+		return null;
+	}
+
+	/**
+	 * @return Whether the uncompressed data of the given blob matches its CRC and size, so truncated or otherwise damaged entries are never copied into ports.
+	 */
+	private static boolean isIntact(CompressedBlob blob)
+	{
+		final CRC32 crc = new CRC32();
+		if(blob.method == ZipEntry.STORED)
+		{
+			crc.update(blob.data, 0, blob.data.length);
+			return blob.data.length == blob.size && crc.getValue() == blob.crc;
+		}
+		if(blob.method != ZipEntry.DEFLATED)
+		{
+			return false;
+		}
+		final Inflater inflater = new Inflater(true);
+		try
+		{
+			inflater.setInput(blob.data);
+			final byte[] buffer = new byte[8192];
+			long size = 0;
+			while(!inflater.finished())
+			{
+				final int read = inflater.inflate(buffer);
+				if(read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				{
+					return false;
+				}
+				crc.update(buffer, 0, read);
+				size += read;
+			}
+			return size == blob.size && crc.getValue() == blob.crc;
+		}
+		catch(DataFormatException e)
+		{
+			return false;
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Stores an entry, failing silently if it can't be written, as the cache is merely an optimisation.
+	 */
+	void put(String key, CompressedBlob blob)
+	{
+		// Entries larger than a tenth of the cache would evict most of it every time they are written.
+		if(17 + blob.data.length > this.maxSize / 10)
+		{
+			return;
+		}
+		final File file = this.file(key);
+		File temp = null;
+		try
+		{
+			if(!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs() && !file.getParentFile().isDirectory())
+			{
+				throw new IOException("Failed to create " + file.getParentFile().getPath());
+			}
+			final ByteBuffer buffer = ByteBuffer.allocate(17 + blob.data.length);
+			buffer.putInt(MAGIC);
+			buffer.put((byte) blob.method);
+			buffer.putInt((int) blob.crc);
+			buffer.putLong(blob.size);
+			buffer.put(blob.data);
+			// Writing to a temporary file first ensures other processes never read a partially written entry.
+			temp = File.createTempFile(key, ".tmp", file.getParentFile());
+			Files.write(temp.toPath(), buffer.array());
+			try
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch(IOException e)
+		{
+			LoggerFactory.getLogger(BlobCache.class).warn("Failed to cache " + key + ": " + e.getMessage());
+			return;
+		}
+		finally
+		{
+			if(temp != null && temp.exists() && !temp.delete())
+			{
+				LoggerFactory.getLogger(BlobCache.class).warn("Failed to delete " + temp.getPath());
+			}
+		}
+		if(this.size.addAndGet(17 + blob.data.length) > this.maxSize)
+		{
+			this.evict();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache is at 90% of its maximum size.
+	 */
+	private synchronized void evict()
+	{
+		final ArrayList<File> files = this.listFiles();
+		final ArrayList<Long> lastModified = new ArrayList<>(files.size());
+		long size = 0;
+		for(File file : files)
+		{
+			size += file.length();
+		}
+		final ArrayList<Integer> order = new ArrayList<>(files.size());
+		for(int i = 0; i < files.size(); i++)
+		{
+			order.add(i);
+			lastModified.add(files.get(i).lastModified());
+		}
+		Collections.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return lastModified.get(a).compareTo(lastModified.get(b));
+			}
+		});
+		for(int i : order)
+		{
+			if(size <= this.maxSize * 9 / 10)
+			{
+				break;
+			}
+			final long length = files.get(i).length();
+			if(files.get(i).delete())
+			{
+				size -= length;
+			}
+		}
+		this.size.set(size);
+	}
+
+	private ArrayList<File> listFiles()
+	{
+		final ArrayList<File> files = new ArrayList<>();
+		final File[] dirs = this.folder.listFiles();
+		if(dirs != null)
+		{
+			for(File dir : dirs)
+			{
+				final File[] dirFiles = dir.listFiles();
+				if(dirFiles != null)
+				{
+					files.addAll(Arrays.asList(dirFiles));
+				}
+			}
+		}
+		return files;
+	}
+}
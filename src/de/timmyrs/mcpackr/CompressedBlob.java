@@ -0,0 +1,20 @@
+package de.timmyrs.mcpackr;
+
+/**
+ * The data of a zip entry as it is stored in a zip, along with what is needed to write its headers.
+ */
+class CompressedBlob
+{
+	final int method;
+	final long crc;
+	final long size;
+	final byte[] data;
+
+	CompressedBlob(int method, long crc, long size, byte[] data)
+	{
+		this.method = method;
+		this.crc = crc;
+		this.size = size;
+		this.data = data;
+	}
+}
@@ -0,0 +1,26 @@
+package de.timmyrs.mcpackr;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that MCPackr's worker threads never keep the JVM alive.
+ */
+class DaemonThreadFactory implements ThreadFactory
+{
+	private final String name;
+	private final AtomicInteger count = new AtomicInteger();
+
+	DaemonThreadFactory(String name)
+	{
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable)
+	{
+		final Thread thread = new Thread(runnable, this.name + " #" + this.count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
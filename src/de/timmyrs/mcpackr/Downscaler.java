@@ -0,0 +1,246 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonObject;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Creates lower resolution versions of a port by resampling its block and item textures, keeping the frames of animated textures intact.
+ * Other entries are copied as they are, as the resolution of other textures, like GUI or entity textures, isn't tied to the resolution of block textures.
+ */
+class Downscaler
+{
+	private final RawZipFile port;
+	/**
+	 * The most common width of the block textures in the port, e.g. 128 for a 128x resource pack, or 0 if the port has no block textures.
+	 */
+	final int resolution;
+
+	Downscaler(RawZipFile port) throws IOException
+	{
+		this.port = port;
+		final HashMap<Integer, Integer> widths = new HashMap<>();
+		for(RawZipFile.Entry entry : port.entries.values())
+		{
+			if(entry.name.endsWith(".png") && (entry.name.startsWith("assets/minecraft/textures/block/") || entry.name.startsWith("assets/minecraft/textures/blocks/")))
+			{
+				final PngHeader header = PngHeader.read(port.readPrefix(entry, PngHeader.LENGTH));
+				if(header != null)
+				{
+					final Integer count = widths.get(header.width);
+					widths.put(header.width, (count == null ? 1 : count + 1));
+				}
+			}
+		}
+		int resolution = 0;
+		int resolutionCount = 0;
+		for(Map.Entry<Integer, Integer> width : widths.entrySet())
+		{
+			if(width.getValue() > resolutionCount)
+			{
+				resolution = width.getKey();
+				resolutionCount = width.getValue();
+			}
+		}
+		this.resolution = resolution;
+	}
+
+	/**
+	 * @return true if the given entry is a block or item texture or its metadata, which are as large as block textures in the game's own resource pack.
+	 */
+	private static boolean isScaled(String name)
+	{
+		return (name.startsWith("assets/minecraft/textures/block/") || name.startsWith("assets/minecraft/textures/blocks/") || name.startsWith("assets/minecraft/textures/item/") || name.startsWith("assets/minecraft/textures/items/")) && (name.endsWith(".png") || name.endsWith(".png.mcmeta"));
+	}
+
+	/**
+	 * Writes a version of the port with block and item textures scaled from {@link #resolution} to the given resolution.
+	 *
+	 * @param file       The zip to be written.
+	 * @param resolution The target resolution, which must be lower than {@link #resolution}.
+	 */
+	void write(File file, final int resolution) throws IOException
+	{
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("MCPackr resampler"));
+		final Iterator<RawZipFile.Entry> entries = this.port.entries.values().iterator();
+		final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+		final ArrayDeque<RawZipFile.Entry> pendingEntries = new ArrayDeque<>();
+		try(RawZipWriter out = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(file))))
+		{
+			while(entries.hasNext() || !pending.isEmpty())
+			{
+				while(entries.hasNext() && pending.size() < threads * 2)
+				{
+					final RawZipFile.Entry entry = entries.next();
+					pendingEntries.add(entry);
+					pending.add(executor.submit(new Callable<byte[]>()
+					{
+						@Override
+						public byte[] call() throws IOException
+						{
+							return (isScaled(entry.name) ? downscale(entry, resolution) : null);
+						}
+					}));
+				}
+				final RawZipFile.Entry entry = pendingEntries.poll();
+				final Future<byte[]> future = pending.poll();
+				final byte[] bytes = future.get();
+				if(bytes == null)
+				{
+					out.copy(this.port, entry);
+				}
+				else
+				{
+					out.write(entry.name, bytes);
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to downscale textures", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The downscaled texture or animation metadata, or null if the entry can be copied as it is.
+	 */
+	private byte[] downscale(RawZipFile.Entry entry, int resolution) throws IOException
+	{
+		final byte[] bytes = this.port.read(entry);
+		final JsonObject animation = this.readAnimation(entry.name.endsWith(".png.mcmeta") ? entry.name : entry.name + ".mcmeta");
+		if(entry.name.endsWith(".png.mcmeta"))
+		{
+			if(animation == null || (animation.get("width") == null && animation.get("height") == null))
+			{
+				return null;
+			}
+			final JsonObject mcmeta = ResourcePack.parseJson(bytes);
+			final JsonObject scaled = mcmeta.get("animation").getAsJsonObject();
+			for(String key : new String[]{"width", "height"})
+			{
+				if(scaled.get(key) != null)
+				{
+					scaled.addProperty(key, this.scale(scaled.get(key).getAsInt(), resolution));
+				}
+			}
+			return mcmeta.toString().getBytes();
+		}
+		final BufferedImage image = Images.read(bytes);
+		if(image == null)
+		{
+			return null;
+		}
+		// Animated textures are scaled frame by frame, so frames don't bleed into each other and stay evenly sized.
+		int frameWidth = image.getWidth();
+		int frameHeight = image.getHeight();
+		if(animation != null)
+		{
+			frameWidth = (animation.get("width") != null ? animation.get("width").getAsInt() : Math.min(image.getWidth(), image.getHeight()));
+			frameHeight = (animation.get("height") != null ? animation.get("height").getAsInt() : Math.min(image.getWidth(), image.getHeight()));
+			if(frameWidth <= 0 || frameHeight <= 0 || image.getWidth() % frameWidth != 0 || image.getHeight() % frameHeight != 0)
+			{
+				frameWidth = image.getWidth();
+				frameHeight = image.getHeight();
+			}
+		}
+		final int columns = image.getWidth() / frameWidth;
+		final int rows = image.getHeight() / frameHeight;
+		final int scaledFrameWidth = this.scale(frameWidth, resolution);
+		final int scaledFrameHeight = this.scale(frameHeight, resolution);
+		final BufferedImage scaled = new BufferedImage(columns * scaledFrameWidth, rows * scaledFrameHeight, BufferedImage.TYPE_INT_ARGB);
+		for(int row = 0; row < rows; row++)
+		{
+			for(int column = 0; column < columns; column++)
+			{
+				final int[] frame = image.getRGB(column * frameWidth, row * frameHeight, frameWidth, frameHeight, null, 0, frameWidth);
+				scaled.setRGB(column * scaledFrameWidth, row * scaledFrameHeight, scaledFrameWidth, scaledFrameHeight, resample(frame, frameWidth, frameHeight, scaledFrameWidth, scaledFrameHeight), 0, scaledFrameWidth);
+			}
+		}
+		return Images.toPng(scaled);
+	}
+
+	private int scale(int size, int resolution)
+	{
+		return Math.max(1, (int) Math.round((double) size * resolution / this.resolution));
+	}
+
+	private JsonObject readAnimation(String mcmetaName) throws IOException
+	{
+		final RawZipFile.Entry mcmeta = this.port.entries.get(mcmetaName);
+		if(mcmeta == null)
+		{
+			return null;
+		}
+		final JsonObject o = ResourcePack.parseJson(this.port.read(mcmeta));
+		return (o.get("animation") != null && o.get("animation").isJsonObject() ? o.get("animation").getAsJsonObject() : null);
+	}
+
+	/**
+	 * Scales ARGB pixels down by averaging the area each target pixel covers, weighting colours by their alpha, so transparent pixels don't darken the edges.
+	 */
+	private static int[] resample(int[] in, int width, int height, int scaledWidth, int scaledHeight)
+	{
+		final int[] out = new int[scaledWidth * scaledHeight];
+		final double xRatio = (double) width / scaledWidth;
+		final double yRatio = (double) height / scaledHeight;
+		for(int y = 0; y < scaledHeight; y++)
+		{
+			final double y0 = y * yRatio;
+			final double y1 = Math.min(height, (y + 1) * yRatio);
+			for(int x = 0; x < scaledWidth; x++)
+			{
+				final double x0 = x * xRatio;
+				final double x1 = Math.min(width, (x + 1) * xRatio);
+				double a = 0, r = 0, g = 0, b = 0, area = 0;
+				for(int sy = (int) y0; sy < y1; sy++)
+				{
+					final double wy = Math.min(y1, sy + 1) - Math.max(y0, sy);
+					for(int sx = (int) x0; sx < x1; sx++)
+					{
+						final double weight = wy * (Math.min(x1, sx + 1) - Math.max(x0, sx));
+						final int argb = in[sy * width + sx];
+						final double alpha = (argb >>> 24) * weight;
+						a += alpha;
+						r += ((argb >> 16) & 0xFF) * alpha;
+						g += ((argb >> 8) & 0xFF) * alpha;
+						b += (argb & 0xFF) * alpha;
+						area += weight;
+					}
+				}
+				if(a > 0)
+				{
+					out[y * scaledWidth + x] = (int) Math.round(a / area) << 24 | (int) Math.round(r / a) << 16 | (int) Math.round(g / a) << 8 | (int) Math.round(b / a);
+				}
+			}
+		}
+		return out;
+	}
+}
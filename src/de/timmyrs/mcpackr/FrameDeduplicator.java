@@ -0,0 +1,288 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Removes repeated frames from the animated textures of a port, keeping each distinct frame once and listing the frames to be shown in the animation metadata, so the animations play exactly as before.
+ * Frames are compared by their pixels, so only textures with an animation are decoded. Only vertical strips are compacted, as the game doesn't lay out frames any other way.
+ */
+class FrameDeduplicator
+{
+	private final RawZipFile port;
+
+	FrameDeduplicator(RawZipFile port)
+	{
+		this.port = port;
+	}
+
+	/**
+	 * Writes the entries of the port in their order, with repeated frames removed from its animated textures.
+	 * The textures are compacted in parallel, but only a few of them ahead of the entry being written, so the compacted textures are never all held in memory at once.
+	 *
+	 * @param out     The writer to write the entries to.
+	 * @param skipped The entries which won't be in the port, e.g. because they are unused.
+	 * @return The number of animated textures which had repeated frames.
+	 */
+	int write(RawZipWriter out, Set<String> skipped) throws IOException
+	{
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("MCPackr frame deduplicator"));
+		final Iterator<RawZipFile.Entry> entries = this.port.entries.values().iterator();
+		final ArrayDeque<RawZipFile.Entry> pendingEntries = new ArrayDeque<>();
+		// A LinkedList, as entries which are copied as they are have no future.
+		final LinkedList<Future<byte[][]>> pending = new LinkedList<>();
+		// The futures of textures of which only the texture or only its metadata has been reached yet, by the name of the texture.
+		final HashMap<String, Future<byte[][]>> halfReached = new HashMap<>();
+		int pendingTextures = 0;
+		int compactedTextures = 0;
+		try
+		{
+			while(entries.hasNext() || !pendingEntries.isEmpty())
+			{
+				while(entries.hasNext() && pendingTextures < threads * 2)
+				{
+					final RawZipFile.Entry entry = entries.next();
+					if(skipped.contains(entry.name))
+					{
+						continue;
+					}
+					final String texture = (entry.name.endsWith(".png.mcmeta") ? entry.name.substring(0, entry.name.length() - 7) : entry.name);
+					Future<byte[][]> future = null;
+					if(texture.endsWith(".png") && this.port.entries.containsKey(texture) && this.port.entries.containsKey(texture + ".mcmeta") && !skipped.contains(texture) && !skipped.contains(texture + ".mcmeta"))
+					{
+						future = halfReached.remove(texture);
+						if(future == null)
+						{
+							final RawZipFile.Entry png = this.port.entries.get(texture);
+							final RawZipFile.Entry mcmeta = this.port.entries.get(texture + ".mcmeta");
+							future = executor.submit(new Callable<byte[][]>()
+							{
+								@Override
+								public byte[][] call() throws IOException
+								{
+									return compact(FrameDeduplicator.this.port.read(png), FrameDeduplicator.this.port.read(mcmeta));
+								}
+							});
+							halfReached.put(texture, future);
+						}
+						pendingTextures++;
+					}
+					pendingEntries.add(entry);
+					pending.add(future);
+				}
+				final RawZipFile.Entry entry = pendingEntries.poll();
+				final Future<byte[][]> future = pending.poll();
+				final byte[][] compacted = (future == null ? null : future.get());
+				if(future != null)
+				{
+					pendingTextures--;
+				}
+				if(compacted == null)
+				{
+					out.copy(this.port, entry);
+				}
+				else if(entry.name.endsWith(".mcmeta"))
+				{
+					out.write(entry.name, compacted[1]);
+				}
+				else
+				{
+					out.write(entry.name, compacted[0]);
+					compactedTextures++;
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to deduplicate frames", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		return compactedTextures;
+	}
+
+	/**
+	 * @return The compacted texture and its animation metadata, or null if the texture has no repeated frames or its animation can't be understood, in which case it's left as it is.
+	 */
+	static byte[][] compact(byte[] png, byte[] mcmetaBytes) throws IOException
+	{
+		final JsonObject mcmeta;
+		final JsonObject animation;
+		final int frameWidth;
+		final int frameHeight;
+		final int frametime;
+		final boolean interpolate;
+		final PngHeader header = PngHeader.read(png);
+		try
+		{
+			mcmeta = ResourcePack.parseJson(mcmetaBytes);
+			if(header == null || mcmeta.get("animation") == null || !mcmeta.get("animation").isJsonObject())
+			{
+				return null;
+			}
+			animation = mcmeta.get("animation").getAsJsonObject();
+			frameWidth = (animation.get("width") == null ? header.width : animation.get("width").getAsInt());
+			frameHeight = (animation.get("height") == null ? frameWidth : animation.get("height").getAsInt());
+			frametime = (animation.get("frametime") == null ? 1 : animation.get("frametime").getAsInt());
+			interpolate = (animation.get("interpolate") != null && animation.get("interpolate").getAsBoolean());
+		}
+		catch(JsonParseException | IllegalStateException | UnsupportedOperationException | ClassCastException | NumberFormatException e)
+		{
+			return null;
+		}
+		if(frameWidth != header.width || frameHeight <= 0 || header.height % frameHeight != 0 || header.height == frameHeight)
+		{
+			return null;
+		}
+		final BufferedImage strip = Images.read(png);
+		if(strip == null)
+		{
+			return null;
+		}
+		final int frameCount = header.height / frameHeight;
+		// Frames are bucketed by the hash of their pixels, and only compared pixel by pixel within a bucket.
+		final int[] distinctFrame = new int[frameCount];
+		final ArrayList<int[]> frames = new ArrayList<>(frameCount);
+		final HashMap<Integer, List<Integer>> buckets = new HashMap<>();
+		for(int i = 0; i < frameCount; i++)
+		{
+			final int[] pixels = strip.getRGB(0, i * frameHeight, frameWidth, frameHeight, null, 0, frameWidth);
+			frames.add(pixels);
+			final int hash = Arrays.hashCode(pixels);
+			List<Integer> bucket = buckets.get(hash);
+			if(bucket == null)
+			{
+				bucket = new ArrayList<>();
+				buckets.put(hash, bucket);
+			}
+			distinctFrame[i] = i;
+			for(int candidate : bucket)
+			{
+				if(Arrays.equals(frames.get(candidate), pixels))
+				{
+					distinctFrame[i] = candidate;
+					break;
+				}
+			}
+			if(distinctFrame[i] == i)
+			{
+				bucket.add(i);
+			}
+		}
+		// The shown frames and their times, which are the animation's frametime unless listed otherwise.
+		final ArrayList<int[]> shown = new ArrayList<>();
+		try
+		{
+			if(animation.get("frames") == null)
+			{
+				for(int i = 0; i < frameCount; i++)
+				{
+					shown.add(new int[]{i, frametime});
+				}
+			}
+			else
+			{
+				for(JsonElement frame : animation.get("frames").getAsJsonArray())
+				{
+					if(frame.isJsonObject())
+					{
+						final JsonObject o = frame.getAsJsonObject();
+						shown.add(new int[]{o.get("index").getAsInt(), (o.get("time") == null ? frametime : o.get("time").getAsInt())});
+					}
+					else
+					{
+						shown.add(new int[]{frame.getAsInt(), frametime});
+					}
+				}
+			}
+		}
+		catch(IllegalStateException | UnsupportedOperationException | ClassCastException | NullPointerException | NumberFormatException e)
+		{
+			return null;
+		}
+		// The distinct frames are kept in the order they are first shown, so frames which are never shown are dropped as well.
+		final HashMap<Integer, Integer> compactedIndex = new HashMap<>();
+		final ArrayList<int[]> compactedShown = new ArrayList<>();
+		for(int[] frame : shown)
+		{
+			if(frame[0] < 0 || frame[0] >= frameCount)
+			{
+				return null;
+			}
+			Integer index = compactedIndex.get(distinctFrame[frame[0]]);
+			if(index == null)
+			{
+				index = compactedIndex.size();
+				compactedIndex.put(distinctFrame[frame[0]], index);
+			}
+			final int[] last = (compactedShown.isEmpty() ? null : compactedShown.get(compactedShown.size() - 1));
+			// Without interpolation, showing a frame twice in a row is the same as showing it once for twice as long.
+			if(!interpolate && last != null && last[0] == index)
+			{
+				last[1] += frame[1];
+			}
+			else
+			{
+				compactedShown.add(new int[]{index, frame[1]});
+			}
+		}
+		if(compactedIndex.size() == frameCount)
+		{
+			return null;
+		}
+		final BufferedImage compacted = new BufferedImage(frameWidth, frameHeight * compactedIndex.size(), BufferedImage.TYPE_INT_ARGB);
+		for(Map.Entry<Integer, Integer> frame : compactedIndex.entrySet())
+		{
+			compacted.setRGB(0, frame.getValue() * frameHeight, frameWidth, frameHeight, frames.get(frame.getKey()), 0, frameWidth);
+		}
+		final JsonArray frameList = new JsonArray();
+		for(int[] frame : compactedShown)
+		{
+			if(frame[1] == frametime)
+			{
+				frameList.add(frame[0]);
+			}
+			else
+			{
+				final JsonObject o = new JsonObject();
+				o.addProperty("index", frame[0]);
+				o.addProperty("time", frame[1]);
+				frameList.add(o);
+			}
+		}
+		animation.add("frames", frameList);
+		return new byte[][]{Images.toPng(compacted), mcmeta.toString().getBytes("UTF-8")};
+	}
+}
@@ -0,0 +1,94 @@
+package de.timmyrs.mcpackr;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The image transforms, kept apart so that AWT and ImageIO are only loaded once an image is actually transformed.
+ * They always run headless, so builds don't need a display either; use {@link PngHeader} when only the dimensions are needed.
+ */
+class Images
+{
+	static
+	{
+		if(System.getProperty("java.awt.headless") == null)
+		{
+			System.setProperty("java.awt.headless", "true");
+		}
+	}
+
+	/**
+	 * @return The decoded image or null if it's not in a supported format.
+	 */
+	static BufferedImage read(byte[] bytes) throws IOException
+	{
+		return ImageIO.read(new ByteArrayInputStream(bytes));
+	}
+
+	static byte[] toPng(BufferedImage image) throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Draws the given images below each other, e.g. to turn separate frames into an animated texture.
+	 *
+	 * @param frames      The images, which are skipped if they can't be decoded.
+	 * @param frameWidth  The width of the strip.
+	 * @param frameHeight The distance between the tops of two images.
+	 */
+	static byte[] stack(List<byte[]> frames, int frameWidth, int frameHeight) throws IOException
+	{
+		final BufferedImage strip = new BufferedImage(frameWidth, frameHeight * frames.size(), BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D g = strip.createGraphics();
+		for(int i = 0; i < frames.size(); i++)
+		{
+			g.drawImage(read(frames.get(i)), 0, i * frameHeight, null);
+		}
+		g.dispose();
+		return toPng(strip);
+	}
+
+	/**
+	 * Cuts the top of a vertical strip into images of the given size, e.g. to turn an animated texture into separate frames.
+	 */
+	static List<byte[]> split(byte[] bytes, int count, int frameWidth, int frameHeight) throws IOException
+	{
+		final BufferedImage strip = read(bytes);
+		if(strip == null)
+		{
+			throw new IOException("Unsupported image format");
+		}
+		final ArrayList<byte[]> frames = new ArrayList<>(count);
+		for(int i = 0; i < count; i++)
+		{
+			final BufferedImage frame = new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_INT_ARGB);
+			final Graphics2D g = frame.createGraphics();
+			g.drawImage(strip.getSubimage(0, i * frameHeight, frameWidth, frameHeight), 0, 0, null);
+			g.dispose();
+			frames.add(toPng(frame));
+		}
+		return frames;
+	}
+
+	/**
+	 * @return The top left part of the given image with the given size.
+	 */
+	static byte[] crop(byte[] bytes, int width, int height) throws IOException
+	{
+		final BufferedImage image = read(bytes);
+		if(image == null)
+		{
+			throw new IOException("Unsupported image format");
+		}
+		return toPng(image.getSubimage(0, 0, width, height));
+	}
+}
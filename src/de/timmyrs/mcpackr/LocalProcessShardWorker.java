@@ -0,0 +1,114 @@
+package de.timmyrs.mcpackr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link ShardWorker} that creates every shard in a new JVM on this machine using the current class path, mainly as a stand-in for workers on other machines.
+ */
+@SuppressWarnings("WeakerAccess")
+public class LocalProcessShardWorker implements ShardWorker
+{
+	private static final String LAYER_OPTION = "--layer=";
+	private final List<String> jvmArguments;
+
+	/**
+	 * @param jvmArguments Additional arguments for each JVM, e.g. "-Xmx1G".
+	 */
+	public LocalProcessShardWorker(String... jvmArguments)
+	{
+		this.jvmArguments = new ArrayList<>();
+		for(String argument : jvmArguments)
+		{
+			this.jvmArguments.add(argument);
+		}
+	}
+
+	@Override
+	public List<String> packShard(List<File> layers, List<String> settings, PackFormat outputFormat, int shard, int shards, File output) throws IOException
+	{
+		final ArrayList<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(this.jvmArguments);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(LocalProcessShardWorker.class.getName());
+		command.add(String.valueOf(outputFormat.id));
+		command.add(String.valueOf(shard));
+		command.add(String.valueOf(shards));
+		command.add(output.getAbsolutePath());
+		for(File layer : layers)
+		{
+			command.add(LAYER_OPTION + layer.getAbsolutePath());
+		}
+		command.addAll(settings);
+		final File complaintsFile = new File(output.getPath() + ".complaints");
+		try
+		{
+			final Process process = new ProcessBuilder(command).redirectOutput(complaintsFile).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			final int exitCode;
+			try
+			{
+				exitCode = process.waitFor();
+			}
+			catch(InterruptedException e)
+			{
+				process.destroy();
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for shard " + shard + ".", e);
+			}
+			if(exitCode != 0)
+			{
+				throw new IOException("Shard " + shard + " of the " + outputFormat.mcversions + " version has failed with exit code " + exitCode + ".");
+			}
+			return Files.readAllLines(complaintsFile.toPath(), Charset.forName("UTF-8"));
+		}
+		finally
+		{
+			Files.deleteIfExists(complaintsFile.toPath());
+		}
+	}
+
+	/**
+	 * The entry point of the worker processes, which prints the complaints about the shard, one per line.
+	 *
+	 * @param args The pack_format number, the shard, the number of shards, the output file, a --layer=&lt;path&gt; option for each layer of the resource pack from the lowest to the highest priority, and the settings of the resource pack.
+	 * @throws IOException When there are some unexpected errors with the file system.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		final ArrayList<File> layers = new ArrayList<>();
+		final ArrayList<String> settings = new ArrayList<>();
+		for(int i = 4; i < args.length; i++)
+		{
+			if(args[i].startsWith(LAYER_OPTION))
+			{
+				layers.add(new File(args[i].substring(LAYER_OPTION.length())));
+			}
+			else
+			{
+				settings.add(args[i]);
+			}
+		}
+		if(args.length < 4 || layers.isEmpty())
+		{
+			System.err.println("Usage: <pack format> <shard> <shards> <output file> --layer=<resource pack>... [settings...]");
+			System.exit(2);
+		}
+		final PackFormat outputFormat = PackFormat.fromId(Integer.parseInt(args[0]));
+		if(outputFormat == null)
+		{
+			System.err.println("Unknown pack format: " + args[0]);
+			System.exit(2);
+		}
+		final ResourcePack resourcePack = new ResourcePack(layers).applyShardSettings(settings);
+		for(String complaint : resourcePack.packShard(new File(args[3]), outputFormat, Integer.parseInt(args[1]), Integer.parseInt(args[2])))
+		{
+			System.out.println(complaint);
+		}
+	}
+}
@@ -2,12 +2,157 @@ package de.timmyrs.mcpackr;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Main
 {
 	public static void main(String[] args) throws IOException
 	{
+		final List<String> options = Arrays.asList(args);
+		if(options.contains("--compare"))
+		{
+			final int i = options.indexOf("--compare");
+			if(i + 2 >= args.length)
+			{
+				System.out.println("Usage: --compare <old zip> <new zip> [--json-diff]");
+				return;
+			}
+			final ZipComparison comparison = ZipComparison.compare(new File(args[i + 1]), new File(args[i + 2]), options.contains("--json-diff"));
+			System.out.print(comparison);
+			System.out.println(comparison.added.size() + " added, " + comparison.removed.size() + " removed, " + comparison.changed.size() + " changed.");
+			return;
+		}
+		if(options.contains("--verify"))
+		{
+			final ArrayList<File> zips = new ArrayList<>();
+			for(int i = options.indexOf("--verify") + 1; i < args.length && !args[i].startsWith("--"); i++)
+			{
+				zips.add(new File(args[i]));
+			}
+			// Without any zips, the generated zips are verified instead.
+			if(!zips.isEmpty())
+			{
+				int problemCount = 0;
+				for(Map.Entry<File, List<String>> verified : PackVerifier.verify(zips).entrySet())
+				{
+					for(String problem : verified.getValue())
+					{
+						System.out.println(verified.getKey().getName() + ": " + problem);
+					}
+					problemCount += verified.getValue().size();
+				}
+				System.out.println(problemCount + " problems found in " + zips.size() + " zips.");
+				if(problemCount > 0)
+				{
+					System.exit(1);
+				}
+				return;
+			}
+		}
+		if(options.contains("--split"))
+		{
+			for(String option : options)
+			{
+				if(option.startsWith("--downscale=") || option.startsWith("--delta="))
+				{
+					System.out.println("--split can't be combined with --downscale or --delta.");
+					System.exit(1);
+				}
+			}
+		}
 		final File workingDirectory = new File(System.getProperty("user.dir"));
-		new ResourcePack(workingDirectory).pack(workingDirectory);
+		final ArrayList<File> layers = new ArrayList<>();
+		layers.add(workingDirectory);
+		for(String option : options)
+		{
+			if(option.startsWith("--layer="))
+			{
+				layers.add(new File(option.substring(8)));
+			}
+		}
+		final ResourcePack resourcePack = (layers.size() == 1 ? new ResourcePack(workingDirectory) : new ResourcePack(layers))
+				.setSha256(options.contains("--sha256"))
+				.setWriteManifest(options.contains("--manifest"))
+				.setPruneUnusedAssets(options.contains("--prune"))
+				.setVerify(options.contains("--verify"))
+				.setFlattenModels(options.contains("--flatten"))
+				.setDeduplicateFrames(options.contains("--dedup-frames"));
+		int serverPort = -1;
+		int shards = 0;
+		for(String option : options)
+		{
+			if(option.startsWith("--serve="))
+			{
+				serverPort = Integer.parseInt(option.substring(8));
+			}
+			else if(option.startsWith("--shards="))
+			{
+				shards = Integer.parseInt(option.substring(9));
+			}
+			else if(option.startsWith("--cache="))
+			{
+				resourcePack.setCache(new File(option.substring(8)), 1024L * 1024 * 1024);
+			}
+			else if(option.startsWith("--downscale="))
+			{
+				final String[] values = option.substring(12).split(",");
+				final int[] resolutions = new int[values.length];
+				for(int i = 0; i < values.length; i++)
+				{
+					resolutions[i] = Integer.parseInt(values[i].trim());
+				}
+				resourcePack.setDownscaledResolutions(resolutions);
+			}
+			else if(option.startsWith("--delta="))
+			{
+				resourcePack.setPreviousReleases(findReleases(new File(option.substring(8))));
+			}
+		}
+		if(serverPort != -1)
+		{
+			new PackServer(resourcePack, workingDirectory, new InetSocketAddress(serverPort), 256L * 1024 * 1024).start();
+			System.out.println("Serving the resource pack on port " + serverPort + ", e.g. http://localhost:" + serverPort + "/?version=1.12.2");
+		}
+		else if(options.contains("--split"))
+		{
+			resourcePack.packSplit(workingDirectory, Arrays.asList(PackFormat.values()));
+		}
+		else if(shards > 0)
+		{
+			resourcePack.packSharded(workingDirectory, Arrays.asList(PackFormat.values()), shards, new LocalProcessShardWorker());
+		}
+		else
+		{
+			resourcePack.pack(workingDirectory);
+		}
+	}
+
+	/**
+	 * @return The zips in the given folder which are named like a port of the given pack format, e.g. "Pack (1.13+).zip", by their pack format.
+	 */
+	private static Map<PackFormat, File> findReleases(File folder) throws IOException
+	{
+		final File[] files = folder.listFiles();
+		if(files == null)
+		{
+			throw new IOException(folder.getPath() + " is not a folder.");
+		}
+		final HashMap<PackFormat, File> releases = new HashMap<>();
+		for(File file : files)
+		{
+			for(PackFormat packFormat : PackFormat.values())
+			{
+				if(file.getName().endsWith(" (" + packFormat.mcversions + ").zip"))
+				{
+					releases.put(packFormat, file);
+				}
+			}
+		}
+		return releases;
 	}
 }
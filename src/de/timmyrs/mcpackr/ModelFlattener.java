@@ -0,0 +1,189 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Merges the models of a resource pack into the models inheriting from them, so that only parents which are provided by the game are left.
+ * Every model is only resolved once per build, and only from the transforming thread.
+ */
+class ModelFlattener
+{
+	/**
+	 * The number of parents after which a parent chain is assumed to be broken rather than resolved any further.
+	 */
+	private static final int MAX_DEPTH = 64;
+	private final PackIndex.Source source;
+	private final LinkedHashSet<String> complaints;
+	/**
+	 * The files of the models in the resource pack by their lowercase entry name.
+	 */
+	private final HashMap<String, String> models = new HashMap<>();
+	private final HashMap<String, JsonObject> resolved = new HashMap<>();
+	private final HashSet<String> resolving = new HashSet<>();
+
+	/**
+	 * @param files The files packed for the pack format, of which the models can be used as parents.
+	 */
+	ModelFlattener(PackIndex.Source source, List<String> files, LinkedHashSet<String> complaints)
+	{
+		this.source = source;
+		this.complaints = complaints;
+		for(String file : files)
+		{
+			String name = file.toLowerCase(Locale.ENGLISH);
+			if(name.substring(name.length() - 2, name.length() - 1).equals("@"))
+			{
+				name = name.substring(0, name.length() - 2);
+			}
+			if(name.startsWith("assets/minecraft/models/") && name.endsWith(".json"))
+			{
+				this.models.put(name, file);
+			}
+		}
+	}
+
+	/**
+	 * @param file  The model's file.
+	 * @param bytes The contents of the model's file.
+	 * @return A copy of the model with the textures, elements, and display settings of its parents in the resource pack merged into it, or null if none of its parents are in the resource pack.
+	 */
+	JsonObject flatten(String file, byte[] bytes) throws IOException
+	{
+		final JsonObject model = ResourcePack.parseJson(bytes);
+		final String parentFile = this.parentFile(model);
+		if(parentFile == null)
+		{
+			return null;
+		}
+		final JsonObject parent;
+		this.resolving.add(file);
+		try
+		{
+			parent = this.resolve(parentFile, file, 1);
+		}
+		finally
+		{
+			this.resolving.remove(file);
+		}
+		if(parent == null)
+		{
+			return null;
+		}
+		return merge(parent, model);
+	}
+
+	private String parentFile(JsonObject model)
+	{
+		if(model.get("parent") == null || !model.get("parent").isJsonPrimitive())
+		{
+			return null;
+		}
+		final String parent = AssetPruner.stripNamespace(model.get("parent").getAsString());
+		if(parent == null)
+		{
+			return null;
+		}
+		return this.models.get("assets/minecraft/models/" + parent.toLowerCase(Locale.ENGLISH) + ".json");
+	}
+
+	/**
+	 * @return The given model merged with all of its parents in the resource pack, or null if it can't be resolved.
+	 */
+	private JsonObject resolve(String file, String child, int depth) throws IOException
+	{
+		JsonObject model = this.resolved.get(file);
+		if(model != null)
+		{
+			return model;
+		}
+		if(!this.resolving.add(file))
+		{
+			ResourcePack.complain(this.complaints, child + " is part of a cycle of parent models, so it has not been merged with its parents.");
+			return null;
+		}
+		try
+		{
+			if(depth > MAX_DEPTH)
+			{
+				ResourcePack.complain(this.complaints, child + " has more than " + MAX_DEPTH + " parent models, so it has not been merged with its parents.");
+				return null;
+			}
+			try
+			{
+				model = ResourcePack.parseJson(this.source.read(file));
+			}
+			catch(JsonParseException | IllegalStateException e)
+			{
+				ResourcePack.complain(this.complaints, file + " can't be parsed, so the models inheriting from it have not been merged with it.");
+				return null;
+			}
+			final String parentFile = this.parentFile(model);
+			if(parentFile != null)
+			{
+				final JsonObject parent = this.resolve(parentFile, file, depth + 1);
+				if(parent != null)
+				{
+					model = merge(parent, model);
+				}
+			}
+			this.resolved.put(file, model);
+			return model;
+		}
+		finally
+		{
+			this.resolving.remove(file);
+		}
+	}
+
+	/**
+	 * Merges a model with its resolved parent the way the game does: textures and display settings are merged with the child's taking precedence, elements and flags are inherited unless the child has its own, and item overrides are not inherited at all.
+	 */
+	static JsonObject merge(JsonObject parent, JsonObject child)
+	{
+		final JsonObject merged = new JsonObject();
+		if(parent.get("parent") != null)
+		{
+			merged.add("parent", parent.get("parent").deepCopy());
+		}
+		for(Map.Entry<String, JsonElement> member : child.entrySet())
+		{
+			if(!member.getKey().equals("parent"))
+			{
+				merged.add(member.getKey(), member.getValue().deepCopy());
+			}
+		}
+		for(String key : new String[]{"textures", "display"})
+		{
+			if(parent.get(key) != null && parent.get(key).isJsonObject())
+			{
+				final JsonObject values = parent.get(key).getAsJsonObject().deepCopy();
+				if(child.get(key) != null && child.get(key).isJsonObject())
+				{
+					for(Map.Entry<String, JsonElement> value : child.get(key).getAsJsonObject().entrySet())
+					{
+						values.add(value.getKey(), value.getValue().deepCopy());
+					}
+				}
+				merged.add(key, values);
+			}
+		}
+		for(String key : new String[]{"elements", "ambientocclusion", "gui_light"})
+		{
+			if(child.get(key) == null && parent.get(key) != null)
+			{
+				merged.add(key, parent.get(key).deepCopy());
+			}
+		}
+		return merged;
+	}
+}
@@ -16,4 +16,101 @@ public enum PackFormat
 		this.id = id;
 		this.mcversions = mcversions;
 	}
+
+	/**
+	 * @param id The pack_format number, e.g. 3.
+	 * @return The pack format with the given number or null if there is none.
+	 */
+	public static PackFormat fromId(int id)
+	{
+		for(PackFormat packFormat : PackFormat.values())
+		{
+			if(packFormat.id == id)
+			{
+				return packFormat;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The Minecraft versions from the first one using the lowest to the last one using the highest of the given pack formats, e.g. "1.9 - 1.12.2" or "1.9+".
+	 */
+	static String range(PackFormat lowest, PackFormat highest)
+	{
+		if(lowest == highest)
+		{
+			return lowest.mcversions;
+		}
+		final String first = lowest.mcversions.split(" - ")[0].replace("+", "");
+		final String last = highest.mcversions.substring(highest.mcversions.lastIndexOf(" ") + 1);
+		return (last.endsWith("+") ? first + "+" : first + " - " + last);
+	}
+
+	/**
+	 * @param version A Minecraft version, e.g. "1.12.2".
+	 * @return The pack format used by the given Minecraft version or null if it is not a supported release.
+	 */
+	public static PackFormat fromVersion(String version)
+	{
+		final String[] parts = version.trim().split("\\.");
+		if(parts.length < 2 || !parts[0].equals("1"))
+		{
+			return null;
+		}
+		final int minor;
+		try
+		{
+			minor = Integer.parseInt(parts[1]);
+		}
+		catch(NumberFormatException e)
+		{
+			return null;
+		}
+		if(minor < 6)
+		{
+			return null;
+		}
+		if(minor <= 8)
+		{
+			return V1;
+		}
+		if(minor <= 10)
+		{
+			return V2;
+		}
+		if(minor <= 12)
+		{
+			return V3;
+		}
+		return V4;
+	}
+
+	/**
+	 * @param protocol The protocol version a client has sent in its handshake, e.g. 340.
+	 * @return The pack format used by clients with the given protocol version or null if it is older than 1.6.1.
+	 */
+	public static PackFormat fromProtocol(int protocol)
+	{
+		// 1.6.x used 73 to 78, the Netty rewrite in 1.7 restarted at 4 and 1.8 uses 47.
+		if(protocol < 4)
+		{
+			return null;
+		}
+		if(protocol < 107)
+		{
+			return V1;
+		}
+		// 1.10.x uses 210 and the 1.11 snapshots start at 301.
+		if(protocol <= 210)
+		{
+			return V2;
+		}
+		// 1.12.2 uses 340 and the 1.13 snapshots start at 341.
+		if(protocol <= 340)
+		{
+			return V3;
+		}
+		return V4;
+	}
 }
@@ -0,0 +1,194 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The files of a resource pack and which of them are to be packed for each pack format.
+ * It is not modified after it has been created, so it can be shared by builds running at the same time.
+ */
+class PackIndex
+{
+	final JsonObject packmeta;
+	final int sourcePackFormat;
+	final ArrayList<String> files;
+	private final List<File> layers;
+	/**
+	 * The index of the layer each file is read from.
+	 */
+	private final HashMap<String, Integer> origins;
+	private final HashMap<Integer, ArrayList<String>> versions = new HashMap<>();
+
+	/**
+	 * Indexes the given layers, from the lowest to the highest priority.
+	 * A file in a higher layer replaces the same file in the lower layers, and a file without an @N suffix also replaces the version-specific files of the lower layers, so they can't leak into the ports of an add-on that doesn't know about them.
+	 */
+	PackIndex(List<File> layers) throws IOException
+	{
+		this.layers = layers;
+		final LinkedHashMap<String, Integer> origins = new LinkedHashMap<>();
+		for(int i = 0; i < layers.size(); i++)
+		{
+			try(PackLayer layer = PackLayer.open(layers.get(i)))
+			{
+				for(String file : layer.list())
+				{
+					if(!isVersionSpecific(file))
+					{
+						for(PackFormat packFormat : PackFormat.values())
+						{
+							final Integer origin = origins.get(file + "@" + packFormat.id);
+							if(origin != null && origin < i)
+							{
+								origins.remove(file + "@" + packFormat.id);
+							}
+						}
+					}
+					origins.put(file, i);
+				}
+			}
+		}
+		this.origins = origins;
+		this.files = new ArrayList<>(origins.keySet());
+		if(!origins.containsKey("pack.mcmeta"))
+		{
+			throw new InvalidResourcePackException("The resource pack is missing the pack.mcmeta file.");
+		}
+		boolean hasAssets = false;
+		for(String file : this.files)
+		{
+			if(file.startsWith("assets/minecraft/"))
+			{
+				hasAssets = true;
+				break;
+			}
+		}
+		if(!hasAssets)
+		{
+			throw new InvalidResourcePackException("The resource pack is missing the `assets/minecraft/` folder.");
+		}
+		try(Source source = this.open())
+		{
+			this.packmeta = ResourcePack.parseJson(source.read("pack.mcmeta")).get("pack").getAsJsonObject();
+		}
+		this.sourcePackFormat = this.packmeta.get("pack_format").getAsInt();
+		final HashSet<String> indexed = new HashSet<>(this.files);
+		for(PackFormat packFormat : PackFormat.values())
+		{
+			this.versions.put(packFormat.id, new ArrayList<String>());
+		}
+		for(final String file : this.files)
+		{
+			if(isVersionSpecific(file))
+			{
+				this.versions.get(Integer.valueOf(file.substring(file.length() - 1))).add(file);
+			}
+			else
+			{
+				for(PackFormat packFormat : PackFormat.values())
+				{
+					if(!indexed.contains(file + "@" + packFormat.id))
+					{
+						this.versions.get(packFormat.id).add(file);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean isVersionSpecific(String file)
+	{
+		return file.length() >= 2 && file.substring(file.length() - 2, file.length() - 1).equals("@");
+	}
+
+	/**
+	 * @return The files to be packed for the given pack format, including version-specific files.
+	 */
+	List<String> get(PackFormat packFormat)
+	{
+		return this.versions.get(packFormat.id);
+	}
+
+	/**
+	 * Opens the layers for reading the indexed files. Each build opens its own source, so zip layers are only held open while they are needed.
+	 */
+	Source open() throws IOException
+	{
+		final PackLayer[] layers = new PackLayer[this.layers.size()];
+		try
+		{
+			for(int i = 0; i < layers.length; i++)
+			{
+				layers[i] = PackLayer.open(this.layers.get(i));
+			}
+		}
+		catch(IOException | RuntimeException e)
+		{
+			for(PackLayer layer : layers)
+			{
+				if(layer != null)
+				{
+					layer.close();
+				}
+			}
+			throw e;
+		}
+		return new Source(layers, this.origins);
+	}
+
+	/**
+	 * Reads each indexed file from the layer it belongs to. Reads are thread-safe.
+	 */
+	static class Source implements Closeable
+	{
+		private final PackLayer[] layers;
+		private final HashMap<String, Integer> origins;
+
+		private Source(PackLayer[] layers, HashMap<String, Integer> origins)
+		{
+			this.layers = layers;
+			this.origins = origins;
+		}
+
+		private PackLayer layer(String file) throws FileNotFoundException
+		{
+			final Integer origin = this.origins.get(file);
+			if(origin == null)
+			{
+				throw new FileNotFoundException("The resource pack does not contain " + file);
+			}
+			return this.layers[origin];
+		}
+
+		byte[] read(String file) throws IOException
+		{
+			return this.layer(file).read(file);
+		}
+
+		/**
+		 * @return The compressed bytes of the given file if it comes from a zip and can be copied as it is, or null.
+		 */
+		CompressedBlob readCompressed(String file) throws IOException
+		{
+			return this.layer(file).readCompressed(file);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			for(PackLayer layer : this.layers)
+			{
+				layer.close();
+			}
+		}
+	}
+}
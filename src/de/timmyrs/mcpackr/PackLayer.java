@@ -0,0 +1,172 @@
+package de.timmyrs.mcpackr;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+
+/**
+ * One of the resource packs a {@link ResourcePack} is made of, which is either a folder or a zip.
+ * Reads are thread-safe.
+ */
+abstract class PackLayer implements Closeable
+{
+	final File file;
+
+	PackLayer(File file)
+	{
+		this.file = file;
+	}
+
+	static PackLayer open(File file) throws IOException
+	{
+		if(file.isDirectory())
+		{
+			return new Folder(file);
+		}
+		return new Zip(file);
+	}
+
+	/**
+	 * @return The paths of the files that belong in a resource pack, i.e. pack.mcmeta, pack.png and everything in assets/.
+	 */
+	abstract List<String> list();
+
+	abstract byte[] read(String path) throws IOException;
+
+	/**
+	 * @return The compressed bytes of the given file if they can be copied into a zip as they are, or null.
+	 */
+	CompressedBlob readCompressed(String path) throws IOException
+	{
+		return null;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+	}
+
+	private static class Folder extends PackLayer
+	{
+		Folder(File folder)
+		{
+			super(folder);
+		}
+
+		private static ArrayList<String> recursivelyIndex(File folder, int offset, boolean root)
+		{
+			final ArrayList<String> files = new ArrayList<>();
+			for(File f : Objects.requireNonNull(folder.listFiles()))
+			{
+				if(root)
+				{
+					switch(f.getName())
+					{
+						case "assets":
+							if(!f.isDirectory())
+							{
+								continue;
+							}
+							break;
+
+						case "pack.mcmeta":
+						case "pack.png":
+							if(!f.isFile())
+							{
+								continue;
+							}
+							break;
+
+						default:
+							continue;
+					}
+				}
+				if(f.isDirectory())
+				{
+					files.addAll(recursivelyIndex(f, offset, false));
+				}
+				else if(!f.getName().equals("Thumbs.db"))
+				{
+					files.add(f.getPath().substring(offset).replace("\\", "/"));
+				}
+			}
+			return files;
+		}
+
+		@Override
+		List<String> list()
+		{
+			return recursivelyIndex(this.file, this.file.getPath().length() + 1, true);
+		}
+
+		@Override
+		byte[] read(String path) throws IOException
+		{
+			return Files.readAllBytes(new File(this.file, path).toPath());
+		}
+	}
+
+	private static class Zip extends PackLayer
+	{
+		private final RawZipFile zip;
+
+		Zip(File file) throws IOException
+		{
+			super(file);
+			this.zip = new RawZipFile(file);
+		}
+
+		@Override
+		List<String> list()
+		{
+			final ArrayList<String> files = new ArrayList<>();
+			for(String name : this.zip.entries.keySet())
+			{
+				if(!name.endsWith("/") && !name.endsWith("/Thumbs.db") && (name.startsWith("assets/") || name.equals("pack.mcmeta") || name.equals("pack.png")))
+				{
+					files.add(name);
+				}
+			}
+			return files;
+		}
+
+		private RawZipFile.Entry entry(String path) throws FileNotFoundException
+		{
+			final RawZipFile.Entry entry = this.zip.entries.get(path);
+			if(entry == null)
+			{
+				throw new FileNotFoundException(this.file.getPath() + " does not contain " + path);
+			}
+			return entry;
+		}
+
+		@Override
+		byte[] read(String path) throws IOException
+		{
+			return this.zip.read(this.entry(path));
+		}
+
+		@Override
+		CompressedBlob readCompressed(String path) throws IOException
+		{
+			final RawZipFile.Entry entry = this.entry(path);
+			if(entry.method != ZipEntry.STORED && entry.method != ZipEntry.DEFLATED)
+			{
+				return null;
+			}
+			return new CompressedBlob(entry.method, entry.crc, entry.size, this.zip.readRaw(entry));
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			this.zip.close();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package de.timmyrs.mcpackr;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A generated zip along with the digests calculated while writing it, e.g. for the {@code resource-pack-sha1} server property.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PackResult
+{
+	/**
+	 * The pack format the zip has been generated for.
+	 */
+	public final PackFormat packFormat;
+	/**
+	 * The generated zip.
+	 */
+	public final File file;
+	/**
+	 * The size of the zip in bytes.
+	 */
+	public final long size;
+	/**
+	 * The lowercase hexadecimal SHA-1 digest of the zip.
+	 */
+	public final String sha1;
+	/**
+	 * The lowercase hexadecimal SHA-256 digest of the zip or null if {@link ResourcePack#setSha256(boolean)} is not enabled.
+	 */
+	public final String sha256;
+	/**
+	 * The assets which have been left out because no blockstate or model references them, if {@link ResourcePack#setPruneUnusedAssets(boolean, String...)} is enabled.
+	 */
+	public final List<String> prunedAssets;
+	/**
+	 * The lower resolution versions of the zip by their resolution, if {@link ResourcePack#setDownscaledResolutions(int...)} is set.
+	 */
+	public final Map<Integer, File> downscaled;
+	/**
+	 * The delta against the previous release, if one has been set using {@link ResourcePack#setPreviousReleases(Map)}, or null.
+	 */
+	public final File delta;
+
+	PackResult(PackFormat packFormat, File file, long size, String sha1, String sha256, List<String> prunedAssets, Map<Integer, File> downscaled, File delta)
+	{
+		this.packFormat = packFormat;
+		this.file = file;
+		this.size = size;
+		this.sha1 = sha1;
+		this.sha256 = sha256;
+		this.prunedAssets = prunedAssets;
+		this.downscaled = downscaled;
+		this.delta = delta;
+	}
+
+	static String toHex(byte[] bytes)
+	{
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes)
+		{
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,403 @@
+package de.timmyrs.mcpackr;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A small HTTP server handing every client the port of a resource pack that matches its Minecraft version, so a server can point its resource pack URL at it.
+ * The port is chosen using the {@code version}, {@code protocol} or {@code format} query parameter, e.g. {@code /?protocol=340}, and defaults to the latest pack format.
+ * Ports are created using {@link ResourcePack#packAsync(File, PackFormat)} on their first request and kept in memory, so serving them again doesn't touch the disk.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PackServer implements Closeable
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private final ResourcePack resourcePack;
+	private final File outputFolder;
+	private final long maxCacheSize;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("MCPackr server"));
+	/**
+	 * The ports held in memory in the order of their last request, guarded by itself.
+	 */
+	private final LinkedHashMap<PackFormat, CachedPort> cache = new LinkedHashMap<>(8, 0.75f, true);
+	private long cacheSize = 0;
+
+	/**
+	 * @param resourcePack The resource pack to serve.
+	 * @param outputFolder The folder where the zips should be generated in.
+	 * @param address      The address to listen on.
+	 * @param maxCacheSize The maximum number of bytes of zips to keep in memory. Zips that are requested less recently are dropped first, and zips larger than this are read from disk.
+	 * @throws IOException When the server can't listen on the given address.
+	 */
+	public PackServer(ResourcePack resourcePack, File outputFolder, InetSocketAddress address, long maxCacheSize) throws IOException
+	{
+		this.resourcePack = resourcePack;
+		this.outputFolder = outputFolder;
+		this.maxCacheSize = maxCacheSize;
+		this.server = HttpServer.create(address, 0);
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				try
+				{
+					PackServer.this.handle(exchange);
+				}
+				catch(IOException | RuntimeException e)
+				{
+					LoggerFactory.getLogger(PackServer.class).warn("Failed to answer " + exchange.getRequestURI() + ": " + e.getMessage());
+					throw e;
+				}
+				finally
+				{
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts accepting requests in the background.
+	 *
+	 * @return this
+	 */
+	public PackServer start()
+	{
+		this.server.start();
+		return this;
+	}
+
+	/**
+	 * @return The address the server is listening on, e.g. to find out the port when listening on port 0.
+	 */
+	public InetSocketAddress getAddress()
+	{
+		return this.server.getAddress();
+	}
+
+	/**
+	 * Stops the server and drops all ports held in memory.
+	 */
+	@Override
+	public void close()
+	{
+		this.server.stop(0);
+		this.executor.shutdown();
+		synchronized(this.cache)
+		{
+			this.cache.clear();
+			this.cacheSize = 0;
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		final String method = exchange.getRequestMethod();
+		if(!method.equals("GET") && !method.equals("HEAD"))
+		{
+			exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+			this.sendText(exchange, 405, "Only GET and HEAD requests are supported.");
+			return;
+		}
+		final PackFormat packFormat;
+		try
+		{
+			final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			if(query.containsKey("protocol"))
+			{
+				packFormat = PackFormat.fromProtocol(Integer.parseInt(query.get("protocol")));
+			}
+			else if(query.containsKey("version"))
+			{
+				packFormat = PackFormat.fromVersion(query.get("version"));
+			}
+			else if(query.containsKey("format"))
+			{
+				packFormat = PackFormat.fromId(Integer.parseInt(query.get("format")));
+			}
+			else
+			{
+				packFormat = PackFormat.latest;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			this.sendText(exchange, 400, "Invalid number: " + e.getMessage());
+			return;
+		}
+		catch(IllegalArgumentException e)
+		{
+			// URLDecoder throws this for malformed escapes like %zz.
+			this.sendText(exchange, 400, "Invalid query: " + e.getMessage());
+			return;
+		}
+		if(packFormat == null)
+		{
+			this.sendText(exchange, 404, "There is no port for this version.");
+			return;
+		}
+		try(Snapshot snapshot = this.snapshot(packFormat))
+		{
+			this.send(exchange, snapshot);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			this.sendText(exchange, 503, "The server is shutting down.");
+		}
+		catch(ExecutionException e)
+		{
+			LoggerFactory.getLogger(PackServer.class).error("Failed to create the " + packFormat.mcversions + " version.", e.getCause());
+			this.sendText(exchange, 500, "Failed to create the " + packFormat.mcversions + " version.");
+		}
+	}
+
+	private void send(HttpExchange exchange, Snapshot snapshot) throws IOException
+	{
+		final PackResult result = snapshot.result;
+		final byte[] bytes = snapshot.bytes;
+		final String etag = "\"" + result.sha1 + "\"";
+		exchange.getResponseHeaders().set("Content-Type", "application/zip");
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + result.file.getName().replace("\"", "") + "\"");
+		final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		if(ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(etag)))
+		{
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+		final long size = bytes == null ? result.size : bytes.length;
+		long start = 0;
+		long end = size - 1;
+		int status = 200;
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		// Multiple ranges are not supported, in which case the whole zip is sent, as HTTP allows.
+		if(range != null && range.startsWith("bytes=") && !range.contains(",") && (ifRange == null || ifRange.equals(etag)))
+		{
+			final String spec = range.substring(6).trim();
+			final int dash = spec.indexOf('-');
+			try
+			{
+				if(dash == -1)
+				{
+					throw new NumberFormatException(spec);
+				}
+				if(dash == 0)
+				{
+					start = Math.max(0, size - Long.parseLong(spec.substring(1)));
+				}
+				else
+				{
+					start = Long.parseLong(spec.substring(0, dash));
+					if(dash < spec.length() - 1)
+					{
+						end = Math.min(end, Long.parseLong(spec.substring(dash + 1)));
+					}
+				}
+				if(start > end || start >= size)
+				{
+					exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+					this.sendText(exchange, 416, "The requested range is not satisfiable.");
+					return;
+				}
+				status = 206;
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+			}
+			catch(NumberFormatException e)
+			{
+				start = 0;
+				end = size - 1;
+			}
+		}
+		final long length = end - start + 1;
+		if(exchange.getRequestMethod().equals("HEAD"))
+		{
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, length);
+		final OutputStream out = exchange.getResponseBody();
+		if(bytes != null)
+		{
+			out.write(bytes, (int) start, (int) length);
+		}
+		else
+		{
+			snapshot.file.seek(start);
+			final byte[] buffer = new byte[65536];
+			long remaining = length;
+			while(remaining > 0)
+			{
+				final int read = snapshot.file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if(read == -1)
+				{
+					throw new IOException(result.file.getPath() + " has been truncated while sending it.");
+				}
+				out.write(buffer, 0, read);
+				remaining -= read;
+			}
+		}
+		out.close();
+	}
+
+	/**
+	 * @return The latest build of the given pack format along with its bytes from memory, if possible, or else its zip opened for reading.
+	 */
+	private Snapshot snapshot(PackFormat packFormat) throws IOException, InterruptedException, ExecutionException
+	{
+		while(true)
+		{
+			final Future<PackResult> build = this.resourcePack.packAsync(this.outputFolder, packFormat);
+			final PackResult result = build.get();
+			synchronized(this.cache)
+			{
+				final CachedPort cached = this.cache.get(packFormat);
+				// packAsync returns a new result after ResourcePack#invalidate(), in which case the zip has to be read again.
+				if(cached != null && cached.result == result)
+				{
+					return new Snapshot(result, cached.bytes, null);
+				}
+			}
+			// A rebuild moves a new zip into place instead of changing the existing one, so once the zip is open and is still the latest build, it keeps matching the digest in the ETag.
+			final RandomAccessFile file = new RandomAccessFile(result.file, "r");
+			if(this.resourcePack.packAsync(this.outputFolder, packFormat) != build || file.length() != result.size)
+			{
+				file.close();
+				continue;
+			}
+			if(result.size > this.maxCacheSize)
+			{
+				return new Snapshot(result, null, file);
+			}
+			final byte[] bytes = new byte[(int) result.size];
+			try
+			{
+				file.readFully(bytes);
+			}
+			finally
+			{
+				file.close();
+			}
+			this.cache(result, bytes);
+			return new Snapshot(result, bytes, null);
+		}
+	}
+
+	private void cache(PackResult result, byte[] bytes)
+	{
+		synchronized(this.cache)
+		{
+			final CachedPort previous = this.cache.put(result.packFormat, new CachedPort(result, bytes));
+			if(previous != null)
+			{
+				this.cacheSize -= previous.bytes.length;
+			}
+			this.cacheSize += bytes.length;
+			final Iterator<CachedPort> iterator = this.cache.values().iterator();
+			while(this.cacheSize > this.maxCacheSize && iterator.hasNext())
+			{
+				final CachedPort port = iterator.next();
+				if(port.result != result)
+				{
+					iterator.remove();
+					this.cacheSize -= port.bytes.length;
+				}
+			}
+		}
+	}
+
+	private void sendText(HttpExchange exchange, int status, String text) throws IOException
+	{
+		final byte[] bytes = (text + "\n").getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		if(exchange.getRequestMethod().equals("HEAD"))
+		{
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, bytes.length);
+		final OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	private static Map<String, String> parseQuery(String query) throws IOException
+	{
+		final HashMap<String, String> parameters = new HashMap<>();
+		if(query != null)
+		{
+			for(String parameter : query.split("&"))
+			{
+				final int equals = parameter.indexOf('=');
+				if(equals != -1)
+				{
+					parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"), URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static class CachedPort
+	{
+		final PackResult result;
+		final byte[] bytes;
+
+		CachedPort(PackResult result, byte[] bytes)
+		{
+			this.result = result;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * A build of a port along with its bytes or its open zip.
+	 */
+	private static class Snapshot implements Closeable
+	{
+		final PackResult result;
+		final byte[] bytes;
+		final RandomAccessFile file;
+
+		Snapshot(PackResult result, byte[] bytes, RandomAccessFile file)
+		{
+			this.result = result;
+			this.bytes = bytes;
+			this.file = file;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if(this.file != null)
+			{
+				this.file.close();
+			}
+		}
+	}
+}
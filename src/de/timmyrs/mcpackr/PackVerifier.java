@@ -0,0 +1,366 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Checks resource pack zips for problems the game would only notice while loading them: corrupt entries, invalid JSON, images that aren't PNGs, animated textures that can't be split into their frames, and blockstates and models referencing models or textures by a name that doesn't exist in the zip's pack format.
+ * References to files that are neither in the zip nor renamed by {@link ConversionTables} are assumed to be provided by the game.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PackVerifier
+{
+	private static final String ROOT = "assets/minecraft/";
+
+	/**
+	 * Checks the given zips in parallel, reading the pack format of each of them from its pack.mcmeta.
+	 *
+	 * @param zips The zips to check.
+	 * @return The problems found in each zip, which are empty for zips without problems.
+	 * @throws IOException When the check has been interrupted.
+	 */
+	public static Map<File, List<String>> verify(Collection<File> zips) throws IOException
+	{
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("MCPackr verifier"));
+		final LinkedHashMap<File, List<String>> res = new LinkedHashMap<>();
+		final ArrayList<RawZipFile> opened = new ArrayList<>();
+		try
+		{
+			final LinkedHashMap<File, PortCheck> checks = new LinkedHashMap<>();
+			for(File file : zips)
+			{
+				final RawZipFile zip;
+				try
+				{
+					zip = new RawZipFile(file);
+				}
+				catch(IOException e)
+				{
+					final ArrayList<String> problems = new ArrayList<>();
+					problems.add("The zip can't be opened: " + e.getMessage());
+					res.put(file, problems);
+					continue;
+				}
+				opened.add(zip);
+				// Every entry is submitted right away, so the entries of all zips are checked at the same time.
+				checks.put(file, new PortCheck(zip, executor));
+				res.put(file, null);
+			}
+			for(Map.Entry<File, PortCheck> check : checks.entrySet())
+			{
+				res.put(check.getKey(), check.getValue().finish());
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		finally
+		{
+			executor.shutdownNow();
+			for(RawZipFile zip : opened)
+			{
+				zip.close();
+			}
+		}
+		return res;
+	}
+
+	private static boolean isBlockOrItemTexture(String name)
+	{
+		return name.startsWith(ROOT + "textures/block/") || name.startsWith(ROOT + "textures/blocks/") || name.startsWith(ROOT + "textures/item/") || name.startsWith(ROOT + "textures/items/");
+	}
+
+	/**
+	 * The checks of a single zip. Entries are checked on the executor, and references and animations are checked once all entries have been checked.
+	 */
+	private static class PortCheck
+	{
+		private final RawZipFile zip;
+		private final LinkedHashMap<String, Future<EntryCheck>> entries = new LinkedHashMap<>();
+		private final ArrayList<String> problems = new ArrayList<>();
+		private PackFormat packFormat = PackFormat.latest;
+
+		PortCheck(RawZipFile zip, ExecutorService executor)
+		{
+			this.zip = zip;
+			final RawZipFile.Entry packmeta = zip.entries.get("pack.mcmeta");
+			if(packmeta == null)
+			{
+				this.problems.add("pack.mcmeta is missing.");
+			}
+			else
+			{
+				try
+				{
+					this.packFormat = PackFormat.fromId(ResourcePack.parseJsonElement(zip.read(packmeta)).getAsJsonObject().get("pack").getAsJsonObject().get("pack_format").getAsInt());
+					if(this.packFormat == null)
+					{
+						this.problems.add("pack.mcmeta has an unknown pack_format.");
+						this.packFormat = PackFormat.latest;
+					}
+				}
+				catch(IOException | RuntimeException e)
+				{
+					this.problems.add("pack.mcmeta doesn't specify a valid pack_format.");
+				}
+			}
+			final PackFormat packFormat = this.packFormat;
+			for(final RawZipFile.Entry entry : zip.entries.values())
+			{
+				if(entry.name.endsWith("/"))
+				{
+					continue;
+				}
+				this.entries.put(entry.name, executor.submit(new Callable<EntryCheck>()
+				{
+					@Override
+					public EntryCheck call()
+					{
+						return new EntryCheck(PortCheck.this.zip, entry, packFormat);
+					}
+				}));
+			}
+		}
+
+		List<String> finish() throws InterruptedException
+		{
+			final LinkedHashMap<String, EntryCheck> checks = new LinkedHashMap<>();
+			for(Map.Entry<String, Future<EntryCheck>> entry : this.entries.entrySet())
+			{
+				try
+				{
+					checks.put(entry.getKey(), entry.getValue().get());
+				}
+				catch(ExecutionException e)
+				{
+					this.problems.add(entry.getKey() + " could not be checked: " + e.getCause());
+				}
+			}
+			final HashSet<String> staleNames = staleNames(this.packFormat);
+			for(Map.Entry<String, EntryCheck> entry : checks.entrySet())
+			{
+				final String name = entry.getKey();
+				final EntryCheck check = entry.getValue();
+				this.problems.addAll(check.problems);
+				for(String reference : check.references)
+				{
+					if(!this.zip.entries.containsKey(reference) && isStale(reference, staleNames))
+					{
+						this.problems.add(name + " references " + reference + ", which doesn't exist in the " + this.packFormat.mcversions + " version.");
+					}
+				}
+				if(check.png != null)
+				{
+					final EntryCheck mcmeta = checks.get(name + ".mcmeta");
+					this.checkTexture(name, check.png, (mcmeta == null ? null : mcmeta.animation));
+				}
+				else if(name.endsWith(".png.mcmeta") && !this.zip.entries.containsKey(name.substring(0, name.length() - 7)))
+				{
+					this.problems.add(name + " belongs to a texture that doesn't exist.");
+				}
+			}
+			return this.problems;
+		}
+
+		private void checkTexture(String name, PngHeader png, JsonObject animation)
+		{
+			if(png.width <= 0 || png.height <= 0)
+			{
+				this.problems.add(name + " has invalid dimensions.");
+				return;
+			}
+			if(animation == null)
+			{
+				if(isBlockOrItemTexture(name) && png.width != png.height)
+				{
+					this.problems.add(name + " is " + png.width + "x" + png.height + ", but block and item textures have to be square unless they are animated.");
+				}
+				return;
+			}
+			try
+			{
+				final int frameWidth = (animation.get("width") == null ? png.width : animation.get("width").getAsInt());
+				final int frameHeight = (animation.get("height") == null ? frameWidth : animation.get("height").getAsInt());
+				if(frameWidth <= 0 || frameHeight <= 0 || png.width % frameWidth != 0 || png.height % frameHeight != 0)
+				{
+					this.problems.add(name + " is " + png.width + "x" + png.height + ", which can't be split into frames of " + frameWidth + "x" + frameHeight + ".");
+					return;
+				}
+				final int frameCount = (png.width / frameWidth) * (png.height / frameHeight);
+				if(animation.get("frames") != null)
+				{
+					for(JsonElement frame : animation.get("frames").getAsJsonArray())
+					{
+						final int index = (frame.isJsonObject() ? frame.getAsJsonObject().get("index").getAsInt() : frame.getAsInt());
+						if(index < 0 || index >= frameCount)
+						{
+							this.problems.add(name + ".mcmeta uses frame " + index + ", but the texture only has " + frameCount + " frames.");
+						}
+					}
+				}
+			}
+			catch(IllegalStateException | UnsupportedOperationException | ClassCastException | NullPointerException | NumberFormatException e)
+			{
+				this.problems.add(name + ".mcmeta has an invalid animation: " + e);
+			}
+		}
+
+		/**
+		 * @return The names of models and textures in other pack formats that {@link ConversionTables} renames or removes for the given pack format, prefixed with "models/" or "textures/".
+		 * Names which also exist in the given pack format, e.g. because a model is renamed while the texture of the same name isn't, are not included.
+		 */
+		private static HashSet<String> staleNames(PackFormat packFormat)
+		{
+			final HashSet<String> stale = new HashSet<>();
+			final HashSet<String> valid = new HashSet<>();
+			for(PackFormat other : PackFormat.values())
+			{
+				if(other == packFormat)
+				{
+					continue;
+				}
+				final ConversionTables to = ConversionTables.get(other.id, packFormat.id);
+				final ConversionTables from = ConversionTables.get(packFormat.id, other.id);
+				addNames(stale, valid, "models/", to.models, from.models);
+				addNames(stale, valid, "textures/", to.textures, from.textures);
+			}
+			stale.removeAll(valid);
+			return stale;
+		}
+
+		/**
+		 * @param to   The renames from another pack format to the checked one, whose keys are names of the other pack format and whose values are names of the checked one.
+		 * @param from The renames from the checked pack format to another one, whose keys are names of the checked one.
+		 */
+		private static void addNames(HashSet<String> stale, HashSet<String> valid, String folder, Map<String, String> to, Map<String, String> from)
+		{
+			for(Map.Entry<String, String> rename : to.entrySet())
+			{
+				if(!rename.getKey().equals(rename.getValue()))
+				{
+					stale.add(folder + rename.getKey());
+				}
+				valid.add(folder + rename.getValue());
+			}
+			for(String name : from.keySet())
+			{
+				valid.add(folder + name);
+			}
+		}
+
+		/**
+		 * @return true if the given reference can't be provided by the game either, because it uses the texture folder or the name of a model or texture of another pack format.
+		 */
+		private boolean isStale(String reference, HashSet<String> staleNames)
+		{
+			final String path = reference.substring(ROOT.length());
+			if(this.packFormat.id < 4 ? (path.startsWith("textures/block/") || path.startsWith("textures/item/")) : (path.startsWith("textures/blocks/") || path.startsWith("textures/items/")))
+			{
+				return true;
+			}
+			final String name = path.substring(path.lastIndexOf('/') + 1, path.lastIndexOf('.'));
+			return staleNames.contains(path.substring(0, path.indexOf('/') + 1) + name);
+		}
+	}
+
+	/**
+	 * The checks of a single entry, which only need the entry itself.
+	 */
+	private static class EntryCheck
+	{
+		final ArrayList<String> problems = new ArrayList<>();
+		/**
+		 * The entry names of the models and textures this blockstate or model references.
+		 */
+		final ArrayList<String> references = new ArrayList<>();
+		PngHeader png;
+		JsonObject animation;
+
+		EntryCheck(RawZipFile zip, RawZipFile.Entry entry, PackFormat packFormat)
+		{
+			final String name = entry.name;
+			final byte[] bytes;
+			try
+			{
+				bytes = zip.read(entry);
+			}
+			catch(IOException e)
+			{
+				this.problems.add(name + " can't be read: " + e.getMessage());
+				return;
+			}
+			final CRC32 crc = new CRC32();
+			crc.update(bytes, 0, bytes.length);
+			if(crc.getValue() != entry.crc || bytes.length != entry.size)
+			{
+				this.problems.add(name + " is corrupt.");
+				return;
+			}
+			if(name.endsWith(".json") || name.endsWith(".mcmeta"))
+			{
+				final JsonElement json;
+				try
+				{
+					json = ResourcePack.parseJsonElement(bytes);
+				}
+				catch(JsonParseException e)
+				{
+					this.problems.add(name + " is not valid JSON: " + e.getMessage());
+					return;
+				}
+				if(!json.isJsonObject())
+				{
+					this.problems.add(name + " is not a JSON object.");
+					return;
+				}
+				try
+				{
+					if(name.startsWith(ROOT + "blockstates/") && name.endsWith(".json"))
+					{
+						this.references.addAll(AssetPruner.blockstateReferences(json.getAsJsonObject(), packFormat));
+					}
+					else if(name.startsWith(ROOT + "models/") && name.endsWith(".json"))
+					{
+						this.references.addAll(AssetPruner.modelReferences(json.getAsJsonObject()));
+					}
+					else if(name.endsWith(".png.mcmeta") && json.getAsJsonObject().get("animation") != null)
+					{
+						this.animation = json.getAsJsonObject().get("animation").getAsJsonObject();
+					}
+				}
+				catch(IllegalStateException | UnsupportedOperationException | ClassCastException e)
+				{
+					this.problems.add(name + " has an unexpected structure: " + e.getMessage());
+				}
+			}
+			else if(name.endsWith(".png"))
+			{
+				this.png = PngHeader.read(bytes);
+				if(this.png == null)
+				{
+					this.problems.add(name + " is not a PNG image.");
+				}
+			}
+		}
+	}
+}
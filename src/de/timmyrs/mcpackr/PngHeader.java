@@ -0,0 +1,56 @@
+package de.timmyrs.mcpackr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The dimensions of a PNG image, read from its IHDR chunk without decoding the image.
+ */
+class PngHeader
+{
+	/**
+	 * The number of bytes at the start of a PNG file which contain its dimensions.
+	 */
+	static final int LENGTH = 24;
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	final int width;
+	final int height;
+
+	private PngHeader(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @param bytes The PNG file or at least its first {@link #LENGTH} bytes.
+	 * @return The header or null if the bytes don't start with a PNG signature followed by an IHDR chunk with positive dimensions.
+	 */
+	static PngHeader read(byte[] bytes)
+	{
+		if(bytes.length < LENGTH)
+		{
+			return null;
+		}
+		for(int i = 0; i < SIGNATURE.length; i++)
+		{
+			if(bytes[i] != SIGNATURE[i])
+			{
+				return null;
+			}
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		// The IHDR chunk always has 13 bytes of data and has to be the first chunk.
+		if(buffer.getInt(8) != 13 || buffer.getInt(12) != 0x49484452)
+		{
+			return null;
+		}
+		final int width = buffer.getInt(16);
+		final int height = buffer.getInt(20);
+		// Callers divide by the dimensions, and PNGs can't be empty anyway.
+		if(width <= 0 || height <= 0)
+		{
+			return null;
+		}
+		return new PngHeader(width, height);
+	}
+}
@@ -0,0 +1,307 @@
+package de.timmyrs.mcpackr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A zip file reader that only reads the central directory up front and gives access to the compressed bytes of each entry, so entries can be compared by their CRC and copied into another zip without being inflated and deflated again.
+ * Reads are positional, so one instance can be used from multiple threads.
+ */
+class RawZipFile implements Closeable
+{
+	/**
+	 * The number of compressed bytes {@link #readPrefix(Entry, int)} reads at a time.
+	 */
+	private static final int PREFIX_CHUNK_SIZE = 512;
+	final File file;
+	/**
+	 * The entries of the zip file in the order of its central directory.
+	 */
+	final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	RawZipFile(File file) throws IOException
+	{
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "r");
+		this.channel = this.raf.getChannel();
+		try
+		{
+			this.readCentralDirectory();
+		}
+		catch(IOException | RuntimeException e)
+		{
+			this.raf.close();
+			throw e;
+		}
+	}
+
+	private void readCentralDirectory() throws IOException
+	{
+		final long length = this.channel.size();
+		final int tailLength = (int) Math.min(length, 22 + 0xFFFF);
+		final ByteBuffer tail = this.readFully(length - tailLength, tailLength);
+		int eocd = -1;
+		for(int i = tailLength - 22; i >= 0; i--)
+		{
+			if(tail.getInt(i) == 0x06054b50)
+			{
+				eocd = i;
+				break;
+			}
+		}
+		if(eocd == -1)
+		{
+			throw new IOException(this.file.getPath() + " is not a zip file.");
+		}
+		long count = tail.getShort(eocd + 10) & 0xFFFF;
+		long cdSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+		long cdOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+		if((count == 0xFFFF || cdOffset == 0xFFFFFFFFL) && eocd >= 20 && tail.getInt(eocd - 20) == 0x07064b50)
+		{
+			final ByteBuffer zip64 = this.readFully(tail.getLong(eocd - 12), 56);
+			if(zip64.getInt(0) != 0x06064b50)
+			{
+				throw new IOException(this.file.getPath() + " has a corrupt zip64 end of central directory record.");
+			}
+			count = zip64.getLong(32);
+			cdSize = zip64.getLong(40);
+			cdOffset = zip64.getLong(48);
+		}
+		if(cdSize > Integer.MAX_VALUE)
+		{
+			throw new IOException(this.file.getPath() + " has an unsupported central directory size.");
+		}
+		final ByteBuffer cd = this.readFully(cdOffset, (int) cdSize);
+		int pos = 0;
+		for(long i = 0; i < count; i++)
+		{
+			if(cd.getInt(pos) != 0x02014b50)
+			{
+				throw new IOException(this.file.getPath() + " has a corrupt central directory.");
+			}
+			final int flags = cd.getShort(pos + 8) & 0xFFFF;
+			final int method = cd.getShort(pos + 10) & 0xFFFF;
+			final int dosTime = cd.getInt(pos + 12);
+			final long crc = cd.getInt(pos + 16) & 0xFFFFFFFFL;
+			long compressedSize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+			long size = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+			final int nameLength = cd.getShort(pos + 28) & 0xFFFF;
+			final int extraLength = cd.getShort(pos + 30) & 0xFFFF;
+			final int commentLength = cd.getShort(pos + 32) & 0xFFFF;
+			long localHeaderOffset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+			final byte[] nameBytes = new byte[nameLength];
+			cd.position(pos + 46);
+			cd.get(nameBytes);
+			int extra = pos + 46 + nameLength;
+			final int extraEnd = extra + extraLength;
+			while(extra + 4 <= extraEnd)
+			{
+				final int id = cd.getShort(extra) & 0xFFFF;
+				final int dataLength = cd.getShort(extra + 2) & 0xFFFF;
+				if(id == 0x0001)
+				{
+					int field = extra + 4;
+					if(size == 0xFFFFFFFFL)
+					{
+						size = cd.getLong(field);
+						field += 8;
+					}
+					if(compressedSize == 0xFFFFFFFFL)
+					{
+						compressedSize = cd.getLong(field);
+						field += 8;
+					}
+					if(localHeaderOffset == 0xFFFFFFFFL)
+					{
+						localHeaderOffset = cd.getLong(field);
+					}
+				}
+				extra += 4 + dataLength;
+			}
+			final String name = new String(nameBytes, Charset.forName((flags & 0x800) == 0 ? "IBM437" : "UTF-8"));
+			this.entries.put(name, new Entry(name, method, crc, compressedSize, size, dosTime, localHeaderOffset));
+			pos = extraEnd + commentLength;
+		}
+	}
+
+	private ByteBuffer readFully(long position, int length) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while(buffer.hasRemaining())
+		{
+			if(this.channel.read(buffer, position + buffer.position()) == -1)
+			{
+				throw new EOFException(this.file.getPath() + " ended unexpectedly.");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Returns the bytes of the given entry exactly as they are stored in the zip file.
+	 */
+	byte[] readRaw(Entry entry) throws IOException
+	{
+		if(entry.compressedSize > Integer.MAX_VALUE)
+		{
+			throw new IOException(entry.name + " is too large.");
+		}
+		return this.readFully(this.dataOffset(entry), (int) entry.compressedSize).array();
+	}
+
+	private long dataOffset(Entry entry) throws IOException
+	{
+		final ByteBuffer localHeader = this.readFully(entry.localHeaderOffset, 30);
+		if(localHeader.getInt(0) != 0x04034b50)
+		{
+			throw new IOException(this.file.getPath() + " has a corrupt local header for " + entry.name);
+		}
+		return entry.localHeaderOffset + 30 + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+	}
+
+	/**
+	 * Returns the uncompressed bytes of the given entry.
+	 */
+	byte[] read(Entry entry) throws IOException
+	{
+		final byte[] raw = this.readRaw(entry);
+		if(entry.method == ZipEntry.STORED)
+		{
+			return raw;
+		}
+		if(entry.method != ZipEntry.DEFLATED)
+		{
+			throw new IOException(entry.name + " uses an unsupported compression method.");
+		}
+		final Inflater inflater = new Inflater(true);
+		try
+		{
+			inflater.setInput(raw);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(entry.size, Integer.MAX_VALUE - 8));
+			final byte[] buffer = new byte[8192];
+			while(!inflater.finished())
+			{
+				final int read = inflater.inflate(buffer);
+				if(read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				{
+					throw new IOException(entry.name + " is truncated.");
+				}
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+		catch(DataFormatException e)
+		{
+			throw new IOException(entry.name + " is corrupt.", e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Returns the first uncompressed bytes of the given entry, or all of them if it's shorter, only reading and inflating as much of it as needed, e.g. to read the header of a file.
+	 */
+	byte[] readPrefix(Entry entry, int length) throws IOException
+	{
+		final long dataOffset = this.dataOffset(entry);
+		if(entry.method == ZipEntry.STORED)
+		{
+			return this.readFully(dataOffset, (int) Math.min(length, entry.compressedSize)).array();
+		}
+		if(entry.method != ZipEntry.DEFLATED)
+		{
+			throw new IOException(entry.name + " uses an unsupported compression method.");
+		}
+		final Inflater inflater = new Inflater(true);
+		try
+		{
+			final byte[] prefix = new byte[(int) Math.min(length, entry.size)];
+			int inflated = 0;
+			long consumed = 0;
+			while(inflated < prefix.length && !inflater.finished())
+			{
+				if(inflater.needsInput())
+				{
+					if(consumed == entry.compressedSize)
+					{
+						throw new IOException(entry.name + " is truncated.");
+					}
+					final int chunk = (int) Math.min(PREFIX_CHUNK_SIZE, entry.compressedSize - consumed);
+					inflater.setInput(this.readFully(dataOffset + consumed, chunk).array());
+					consumed += chunk;
+				}
+				else if(inflater.needsDictionary())
+				{
+					throw new IOException(entry.name + " is corrupt.");
+				}
+				inflated += inflater.inflate(prefix, inflated, prefix.length - inflated);
+			}
+			return (inflated == prefix.length ? prefix : Arrays.copyOf(prefix, inflated));
+		}
+		catch(DataFormatException e)
+		{
+			throw new IOException(entry.name + " is corrupt.", e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.raf.close();
+	}
+
+	static class Entry
+	{
+		final String name;
+		final int method;
+		final long crc;
+		final long compressedSize;
+		final long size;
+		/**
+		 * The MS-DOS date in the upper and the MS-DOS time in the lower 16 bits.
+		 */
+		final int dosTime;
+		final long localHeaderOffset;
+
+		Entry(String name, int method, long crc, long compressedSize, long size, int dosTime, long localHeaderOffset)
+		{
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.dosTime = dosTime;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		/**
+		 * @return true if both entries have the same uncompressed content, judging by their CRC and size.
+		 */
+		boolean sameContentAs(Entry entry)
+		{
+			return this.crc == entry.crc && this.size == entry.size;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package de.timmyrs.mcpackr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A zip writer which, unlike {@link java.util.zip.ZipOutputStream}, can also write entries that are already compressed, e.g. when copying them from a {@link RawZipFile}.
+ */
+class RawZipWriter implements Closeable
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private final OutputStream out;
+	private final ArrayList<WrittenEntry> written = new ArrayList<>();
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final int dosTime = dosTime(System.currentTimeMillis());
+	private long offset = 0;
+
+	RawZipWriter(OutputStream out)
+	{
+		this.out = out;
+	}
+
+	static int dosTime(long millis)
+	{
+		final Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(millis);
+		final int year = c.get(Calendar.YEAR);
+		if(year < 1980)
+		{
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21 | c.get(Calendar.DAY_OF_MONTH) << 16 | c.get(Calendar.HOUR_OF_DAY) << 11 | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+	}
+
+	/**
+	 * Compresses the given bytes and writes them as a new entry.
+	 */
+	void write(String name, byte[] bytes) throws IOException
+	{
+		this.write(name, this.compress(bytes));
+	}
+
+	/**
+	 * Writes an entry that has already been compressed using {@link #compress(byte[])}.
+	 */
+	void write(String name, CompressedBlob blob) throws IOException
+	{
+		this.writeRaw(name, blob.method, blob.crc, blob.size, this.dosTime, blob.data);
+	}
+
+	/**
+	 * Deflates the given bytes, or stores them as they are if deflating them doesn't make them any smaller.
+	 */
+	CompressedBlob compress(byte[] bytes)
+	{
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2 + 64);
+		final byte[] buffer = new byte[8192];
+		this.deflater.reset();
+		this.deflater.setInput(bytes);
+		this.deflater.finish();
+		while(!this.deflater.finished())
+		{
+			compressed.write(buffer, 0, this.deflater.deflate(buffer));
+		}
+		if(compressed.size() < bytes.length)
+		{
+			return new CompressedBlob(ZipEntry.DEFLATED, crc.getValue(), bytes.length, compressed.toByteArray());
+		}
+		return new CompressedBlob(ZipEntry.STORED, crc.getValue(), bytes.length, bytes);
+	}
+
+	/**
+	 * Copies the given entry from the given zip file without inflating it.
+	 */
+	void copy(RawZipFile zip, RawZipFile.Entry entry) throws IOException
+	{
+		this.copy(zip, entry, entry.name);
+	}
+
+	/**
+	 * Copies the given entry from the given zip file under a new name without inflating it.
+	 */
+	void copy(RawZipFile zip, RawZipFile.Entry entry, String name) throws IOException
+	{
+		this.writeRaw(name, entry.method, entry.crc, entry.size, entry.dosTime, zip.readRaw(entry));
+	}
+
+	/**
+	 * Writes an entry whose data has already been compressed using the given method.
+	 */
+	void writeRaw(String name, int method, long crc, long size, int dosTime, byte[] data) throws IOException
+	{
+		if(size >= 0xFFFFFFFFL || data.length >= 0xFFFFFFFFL)
+		{
+			throw new IOException(name + " is too large to be packed.");
+		}
+		final byte[] nameBytes = name.getBytes(UTF_8);
+		final ByteBuffer header = ByteBuffer.allocate(30 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(0x04034b50);
+		header.putShort((short) 20);
+		header.putShort((short) 0x800);
+		header.putShort((short) method);
+		header.putInt(dosTime);
+		header.putInt((int) crc);
+		header.putInt(data.length);
+		header.putInt((int) size);
+		header.putShort((short) nameBytes.length);
+		header.putShort((short) 0);
+		header.put(nameBytes);
+		this.out.write(header.array());
+		this.out.write(data);
+		this.written.add(new WrittenEntry(nameBytes, method, crc, data.length, size, dosTime, this.offset));
+		this.offset += header.capacity() + data.length;
+	}
+
+	/**
+	 * Writes the central directory and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			final long cdOffset = this.offset;
+			for(WrittenEntry entry : this.written)
+			{
+				final boolean zip64 = entry.localHeaderOffset >= 0xFFFFFFFFL;
+				final ByteBuffer header = ByteBuffer.allocate(46 + entry.name.length + (zip64 ? 12 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(0x02014b50);
+				header.putShort((short) (zip64 ? 45 : 20));
+				header.putShort((short) (zip64 ? 45 : 20));
+				header.putShort((short) 0x800);
+				header.putShort((short) entry.method);
+				header.putInt(entry.dosTime);
+				header.putInt((int) entry.crc);
+				header.putInt((int) entry.compressedSize);
+				header.putInt((int) entry.size);
+				header.putShort((short) entry.name.length);
+				header.putShort((short) (zip64 ? 12 : 0));
+				header.putShort((short) 0);
+				header.putShort((short) 0);
+				header.putShort((short) 0);
+				header.putInt(0);
+				header.putInt(zip64 ? 0xFFFFFFFF : (int) entry.localHeaderOffset);
+				header.put(entry.name);
+				if(zip64)
+				{
+					header.putShort((short) 0x0001);
+					header.putShort((short) 8);
+					header.putLong(entry.localHeaderOffset);
+				}
+				this.out.write(header.array());
+				this.offset += header.capacity();
+			}
+			final long cdSize = this.offset - cdOffset;
+			final int count = this.written.size();
+			final boolean zip64 = count >= 0xFFFF || cdOffset >= 0xFFFFFFFFL;
+			final ByteBuffer end = ByteBuffer.allocate((zip64 ? 56 + 20 : 0) + 22).order(ByteOrder.LITTLE_ENDIAN);
+			if(zip64)
+			{
+				end.putInt(0x06064b50);
+				end.putLong(44);
+				end.putShort((short) 45);
+				end.putShort((short) 45);
+				end.putInt(0);
+				end.putInt(0);
+				end.putLong(count);
+				end.putLong(count);
+				end.putLong(cdSize);
+				end.putLong(cdOffset);
+				end.putInt(0x07064b50);
+				end.putInt(0);
+				end.putLong(this.offset);
+				end.putInt(1);
+			}
+			end.putInt(0x06054b50);
+			end.putShort((short) 0);
+			end.putShort((short) 0);
+			end.putShort((short) Math.min(count, 0xFFFF));
+			end.putShort((short) Math.min(count, 0xFFFF));
+			end.putInt((int) Math.min(cdSize, 0xFFFFFFFFL));
+			end.putInt((int) Math.min(cdOffset, 0xFFFFFFFFL));
+			end.putShort((short) 0);
+			this.out.write(end.array());
+		}
+		finally
+		{
+			this.deflater.end();
+			this.out.close();
+		}
+	}
+
+	private static class WrittenEntry
+	{
+		final byte[] name;
+		final int method;
+		final long crc;
+		final long compressedSize;
+		final long size;
+		final int dosTime;
+		final long localHeaderOffset;
+
+		WrittenEntry(byte[] name, int method, long crc, long compressedSize, long size, int dosTime, long localHeaderOffset)
+		{
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.dosTime = dosTime;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+}
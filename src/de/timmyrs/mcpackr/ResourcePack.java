@@ -3,45 +3,84 @@ package de.timmyrs.mcpackr;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.stream.JsonReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 @SuppressWarnings("WeakerAccess")
 public class ResourcePack
 {
+	private static final int PREFETCH_THREADS = 4;
+	private static final int PREFETCH_DEPTH = 64;
+	private static final int WRITE_QUEUE_CAPACITY = 64;
 	/**
 	 * The base folder of the resource pack, which must contain a pack.mcmeta file.
 	 */
 	public final File folder;
+	private final List<File> layers;
+	private static final ExecutorService asyncExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("MCPackr builder"));
+	private final ConcurrentHashMap<String, FutureTask<PackResult>> builds = new ConcurrentHashMap<>();
+	/**
+	 * The locks serialising the builds of each zip by its canonical path, which are shared by all instances, as they may write to the same output folder.
+	 */
+	private static final ConcurrentHashMap<String, Object> outputLocks = new ConcurrentHashMap<>();
+	private PackIndex index;
+	private volatile boolean sha256 = false;
+	private volatile boolean writeManifest = false;
+	private volatile boolean pruneUnusedAssets = false;
+	private volatile List<String> pruneAllowList = AssetPruner.DEFAULT_ALLOW_LIST;
+	private volatile int[] downscaledResolutions = new int[0];
+	private volatile BlobCache cache;
+	private volatile boolean verify = false;
+	private volatile boolean flattenModels = false;
+	private volatile boolean deduplicateFrames = false;
+	private volatile Map<PackFormat, File> previousReleases = Collections.emptyMap();
 
 	/**
 	 * @param folder The base folder of the resource pack, which must contain a pack.mcmeta file.
 	 */
 	public ResourcePack(File folder)
 	{
-		this.folder = folder;
+		this(Collections.singletonList(folder));
 		if(!new File(folder.getPath() + "/pack.mcmeta").isFile())
 		{
 			throw new InvalidResourcePackException("The resource pack is missing the pack.mcmeta file.");
@@ -52,6 +91,221 @@ public class ResourcePack
 		}
 	}
 
+	/**
+	 * Combines multiple resource packs, e.g. a base pack and some add-ons, and ports them in one go.
+	 * A file in a higher layer replaces the same file in the lower layers. A file without an @N suffix also replaces the version-specific files of the lower layers, while a version-specific file only replaces the same version-specific file.
+	 *
+	 * @param layers The folders or zips of the resource packs, from the lowest to the highest priority. The zips are named after the first one, and together they need to contain a pack.mcmeta file.
+	 */
+	public ResourcePack(List<File> layers)
+	{
+		if(layers.isEmpty())
+		{
+			throw new IllegalArgumentException("At least one resource pack is required.");
+		}
+		for(File layer : layers)
+		{
+			if(!layer.exists())
+			{
+				throw new InvalidResourcePackException(layer.getPath() + " does not exist.");
+			}
+		}
+		this.folder = layers.get(0);
+		this.layers = new ArrayList<>(layers);
+	}
+
+	/**
+	 * @param sha256 Whether a SHA-256 digest should be calculated in addition to the SHA-1 digest of each generated zip.
+	 * @return this
+	 */
+	public ResourcePack setSha256(boolean sha256)
+	{
+		this.sha256 = sha256;
+		this.forgetBuilds();
+		return this;
+	}
+
+	/**
+	 * @param writeManifest Whether the size and digests of each generated zip should be written to a JSON file next to it, named like the zip with ".json" appended.
+	 * @return this
+	 */
+	public ResourcePack setWriteManifest(boolean writeManifest)
+	{
+		this.writeManifest = writeManifest;
+		this.forgetBuilds();
+		return this;
+	}
+
+	/**
+	 * Models, as well as block and item textures, which are not reachable from any blockstate or item model in a port can be left out of it.
+	 * Block and item textures which the game loads without a model, like water and lava, are always kept, and so are all other textures, e.g. GUI, entity, and font textures.
+	 * Unused assets are never removed from 1.6.1 - 1.8.9 ports, because 1.6 and 1.7 load textures without models.
+	 * The removed assets are listed in {@link PackResult#prunedAssets}.
+	 *
+	 * @param pruneUnusedAssets Whether unused assets should be left out of the ports.
+	 * @param allowList         Additional paths relative to {@code assets/minecraft/}, e.g. "textures/block/my_", of assets which must be kept even when unused; a path matches every asset starting with it.
+	 * @return this
+	 */
+	public ResourcePack setPruneUnusedAssets(boolean pruneUnusedAssets, String... allowList)
+	{
+		final ArrayList<String> pruneAllowList = new ArrayList<>(AssetPruner.DEFAULT_ALLOW_LIST);
+		pruneAllowList.addAll(Arrays.asList(allowList));
+		this.pruneAllowList = pruneAllowList;
+		this.pruneUnusedAssets = pruneUnusedAssets;
+		this.forgetBuilds();
+		return this;
+	}
+
+	/**
+	 * Lower resolution versions of each port can be created in addition to the full resolution ports, e.g. 64x and 32x versions of a 128x resource pack.
+	 * The resolution of the resource pack is determined by the most common width of its block textures, and all textures are scaled by the same ratio.
+	 * The versions are named like the port with the resolution appended, e.g. "Pack (1.13+, 32x).zip", and are listed in {@link PackResult#downscaled}.
+	 *
+	 * @param resolutions The resolutions to create versions for; resolutions that are not lower than the resource pack's are skipped.
+	 * @return this
+	 */
+	public ResourcePack setDownscaledResolutions(int... resolutions)
+	{
+		this.downscaledResolutions = resolutions.clone();
+		this.forgetBuilds();
+		return this;
+	}
+
+	/**
+	 * Models can be merged with their parents in the resource pack, so the game doesn't have to resolve long chains of parents when loading them, and parent models that are only used by other models can be removed using {@link #setPruneUnusedAssets(boolean, String...)}.
+	 * Only parents provided by the game are left. The 1.6.1 - 1.8.9 version is always flattened, as 1.8 doesn't allow models with elements to have a parent.
+	 *
+	 * @param flattenModels Whether models should be merged with their parents in all versions.
+	 * @return this
+	 */
+	public ResourcePack setFlattenModels(boolean flattenModels)
+	{
+		this.flattenModels = flattenModels;
+		this.forgetBuilds();
+		return this;
+	}
+
+	/**
+	 * Animated textures, including the compass and clock animations created for the 1.6.1 - 1.8.9 version, often show the same frame more than once.
+	 * Each distinct frame can be kept only once, with the animation metadata listing which frame is shown for how long, so the animations play as before while taking up less space and texture memory.
+	 *
+	 * @param deduplicateFrames Whether repeated frames should be removed from animated textures.
+	 * @return this
+	 */
+	public ResourcePack setDeduplicateFrames(boolean deduplicateFrames)
+	{
+		this.deduplicateFrames = deduplicateFrames;
+		this.forgetBuilds();
+		return this;
+	}
+
+	/**
+	 * Each generated zip can be checked using {@link PackVerifier} after it has been created, in which case the problems found are logged along with the other complaints.
+	 *
+	 * @param verify Whether the generated zips should be verified.
+	 * @return this
+	 */
+	public ResourcePack setVerify(boolean verify)
+	{
+		this.verify = verify;
+		return this;
+	}
+
+	/**
+	 * A delta can be created for each port of which a previous release is known, so players who have the previous release only need to download what has changed.
+	 * Entries are compared by the CRC and size in the central directories, so neither zip is inflated. The delta contains the added and changed entries and a {@value ZipComparison#DELTA_MANIFEST} entry listing the removed entries.
+	 * The deltas are named like the port with "delta" appended, e.g. "Pack (1.13+, delta).zip", and are listed in {@link PackResult#delta}.
+	 *
+	 * @param previousReleases The previously released zip of each pack format to create a delta for.
+	 * @return this
+	 */
+	public ResourcePack setPreviousReleases(Map<PackFormat, File> previousReleases)
+	{
+		this.previousReleases = new HashMap<>(previousReleases);
+		this.forgetBuilds();
+		return this;
+	}
+
+	/**
+	 * Entries can be cached in their transformed and compressed form, keyed by a hash of their source and how they are transformed, so that any entry which has been packed before, by this or any other resource pack, is copied from the cache instead.
+	 * The cache folder can be shared by any number of resource packs, runs, and processes.
+	 *
+	 * @param folder  The folder to keep the cache in, or null to disable the cache.
+	 * @param maxSize The size in bytes above which the least recently used entries are deleted from the cache.
+	 * @return this
+	 * @throws IOException When the cache folder can't be created.
+	 */
+	public ResourcePack setCache(File folder, long maxSize) throws IOException
+	{
+		this.cache = (folder == null ? null : BlobCache.open(folder, maxSize));
+		this.forgetBuilds();
+		return this;
+	}
+
+	/**
+	 * Returns the settings a {@link ShardWorker} needs to create shards exactly like this instance would, i.e. whether models are flattened and which cache is used, in the form of command line options.
+	 * The other settings only affect the merged zips, so they are left to the instance merging the shards.
+	 *
+	 * @return The settings, which can be applied to another instance using {@link #applyShardSettings(List)}.
+	 */
+	public List<String> getShardSettings()
+	{
+		final ArrayList<String> settings = new ArrayList<>();
+		if(this.flattenModels)
+		{
+			settings.add("--flatten");
+		}
+		final BlobCache cache = this.cache;
+		if(cache != null)
+		{
+			settings.add("--cache=" + cache.folder.getAbsolutePath());
+			settings.add("--cache-size=" + cache.maxSize);
+		}
+		return settings;
+	}
+
+	/**
+	 * Applies the settings of another instance returned by {@link #getShardSettings()}, e.g. in the process creating a shard.
+	 *
+	 * @param settings The settings.
+	 * @return this
+	 * @throws IllegalArgumentException If a setting is unknown, so a shard is never created differently than requested.
+	 * @throws IOException              When the cache folder can't be created.
+	 */
+	public ResourcePack applyShardSettings(List<String> settings) throws IOException
+	{
+		File cacheFolder = null;
+		long cacheSize = -1;
+		for(String setting : settings)
+		{
+			if(setting.equals("--flatten"))
+			{
+				this.setFlattenModels(true);
+			}
+			else if(setting.startsWith("--cache="))
+			{
+				cacheFolder = new File(setting.substring(8));
+			}
+			else if(setting.startsWith("--cache-size="))
+			{
+				cacheSize = Long.parseLong(setting.substring(13));
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown shard setting: " + setting);
+			}
+		}
+		if((cacheFolder == null) != (cacheSize == -1))
+		{
+			throw new IllegalArgumentException("The cache folder and size have to be given together.");
+		}
+		if(cacheFolder != null)
+		{
+			this.setCache(cacheFolder, cacheSize);
+		}
+		return this;
+	}
+
 	/**
 	 * Creates a version of a resource pack for each pack format.
 	 *
@@ -86,74 +340,469 @@ public class ResourcePack
 	 */
 	public Map<PackFormat, File> pack(File outputFolder, List<PackFormat> outputFormats) throws IOException
 	{
-		final JsonParser jsonParser = new JsonParser();
-		final Logger logger = LoggerFactory.getLogger(ResourcePack.class);
 		final HashMap<PackFormat, File> res = new HashMap<>();
-		final File packmetaFile = new File(this.folder.getPath() + "/pack.mcmeta");
-		JsonReader jsonReader;
-		try
+		for(Map.Entry<PackFormat, PackResult> result : this.packWithDigests(outputFolder, outputFormats).entrySet())
 		{
-			jsonReader = new JsonReader(new FileReader(packmetaFile));
+			res.put(result.getKey(), result.getValue().file);
 		}
-		catch(FileNotFoundException e)
+		return res;
+	}
+
+	/**
+	 * Creates a version of a resource pack for each given pack format, calculating the size and digests of each zip while writing it.
+	 * If {@link #setWriteManifest(boolean)} is enabled, they are also written to a JSON file next to each zip.
+	 *
+	 * @param outputFolder  The folder where the zips should be generated in.
+	 * @param outputFormats An array of versions you'd like to the resource pack to be compatible with.
+	 * @return The zips that have been generated along with their size and digests.
+	 * @throws IOException When there are some unexpected errors with the file system.
+	 */
+	public Map<PackFormat, PackResult> packWithDigests(File outputFolder, List<PackFormat> outputFormats) throws IOException
+	{
+		final HashMap<PackFormat, PackResult> res = new HashMap<>();
+		final PackIndex index = this.index(true);
+		final LinkedHashSet<String> complaints = new LinkedHashSet<>();
+		for(PackFormat packFormat : outputFormats)
 		{
-			throw new InvalidResourcePackException("The resource pack is missing the pack.mcmeta file.");
+			res.put(packFormat, this.packFormat(index, packFormat, outputFolder, complaints));
 		}
-		jsonReader.setLenient(true);
-		final JsonObject packmeta = jsonParser.parse(jsonReader).getAsJsonObject().get("pack").getAsJsonObject();
-		final int sourcePackFormat = packmeta.get("pack_format").getAsInt();
-		final File resourcesRoot = new File(this.folder.getPath() + "/assets/minecraft");
-		if(!resourcesRoot.isDirectory())
+		this.verifyPorts(res.values(), complaints);
+		logComplaints(complaints);
+		return res;
+	}
+
+	/**
+	 * Creates a version of a resource pack for the given pack format in the background.
+	 * Every pack format is only created once per output folder, so requesting it again returns the same future, unless the previous attempt has failed.
+	 * The resource pack is only indexed once for all of these requests; see {@link #invalidate()}.
+	 * Changing a setting that affects the generated files, e.g. {@link #setPruneUnusedAssets(boolean, String...)}, forgets the zips created so far, so the next request creates them with the new settings.
+	 *
+	 * @param outputFolder The folder where the zip should be generated in.
+	 * @param outputFormat The version you'd like to the resource pack to be compatible with.
+	 * @return A future that completes with the zip that has been generated along with its size and digests.
+	 */
+	public Future<PackResult> packAsync(File outputFolder, PackFormat outputFormat)
+	{
+		return this.packAsync(outputFolder, outputFormat, asyncExecutor);
+	}
+
+	/**
+	 * Creates a version of a resource pack for the given pack format in the background using the given executor.
+	 * Every pack format is only created once per output folder, so requesting it again returns the same future, unless the previous attempt has failed.
+	 * The resource pack is only indexed once for all of these requests; see {@link #invalidate()}.
+	 * Changing a setting that affects the generated files, e.g. {@link #setPruneUnusedAssets(boolean, String...)}, forgets the zips created so far, so the next request creates them with the new settings.
+	 *
+	 * @param outputFolder The folder where the zip should be generated in.
+	 * @param outputFormat The version you'd like to the resource pack to be compatible with.
+	 * @param executor     The executor to create the zip on, if it hasn't been requested before.
+	 * @return A future that completes with the zip that has been generated along with its size and digests.
+	 */
+	public Future<PackResult> packAsync(final File outputFolder, final PackFormat outputFormat, Executor executor)
+	{
+		final String key = outputFolder.getAbsolutePath() + "/" + outputFormat.name();
+		FutureTask<PackResult> build = this.builds.get(key);
+		if(build == null)
 		{
-			throw new InvalidResourcePackException("The resource pack is missing the `assets/minecraft/` folder.");
+			final FutureTask<PackResult> newBuild = new FutureTask<PackResult>(new Callable<PackResult>()
+			{
+				@Override
+				public PackResult call() throws IOException
+				{
+					final LinkedHashSet<String> complaints = new LinkedHashSet<>();
+					final PackResult result = packFormat(index(false), outputFormat, outputFolder, complaints);
+					verifyPorts(Collections.singletonList(result), complaints);
+					logComplaints(complaints);
+					return result;
+				}
+			})
+			{
+				@Override
+				protected void done()
+				{
+					try
+					{
+						this.get();
+					}
+					catch(InterruptedException | ExecutionException | CancellationException e)
+					{
+						builds.remove(key, this);
+					}
+				}
+			};
+			build = this.builds.putIfAbsent(key, newBuild);
+			if(build == null)
+			{
+				build = newBuild;
+				executor.execute(newBuild);
+			}
 		}
-		final String packName = this.folder.getName();
-		for(PackFormat packFormat : PackFormat.values())
+		return build;
+	}
+
+	/**
+	 * Creates the part of a version of a resource pack that consists of the files in the given shard, without a central directory entry for anything outside of it.
+	 * This is what a {@link ShardWorker} runs, e.g. in another process or on another machine with access to the resource pack.
+	 *
+	 * @param output       The file the partial zip should be written to.
+	 * @param outputFormat The version you'd like to the resource pack to be compatible with.
+	 * @param shard        The index of the shard, starting at 0.
+	 * @param shards       The number of shards the resource pack is split into.
+	 * @return The complaints about the files in the shard.
+	 * @throws IOException When there are some unexpected errors with the file system.
+	 */
+	public List<String> packShard(File output, PackFormat outputFormat, int shard, int shards) throws IOException
+	{
+		if(shard < 0 || shard >= shards)
 		{
-			final File outputFile = new File(outputFolder.getPath() + "/" + packName + " (" + packFormat.mcversions + ").zip");
-			if(outputFile.isFile() && !outputFile.delete())
+			throw new IllegalArgumentException("Invalid shard " + shard + " of " + shards);
+		}
+		final PackIndex index = this.index(false);
+		final ArrayList<String> files = new ArrayList<>();
+		for(String file : index.get(outputFormat))
+		{
+			if(shardOf(file, shards) == shard)
 			{
-				throw new IOException("Failed to delete " + outputFile.getPath());
+				files.add(file);
 			}
 		}
-		logger.info("Indexing resource pack...");
-		final ArrayList<String> files = recursivelyIndex(this.folder, this.folder.getPath().length() + 1, true);
-		final ArrayList<String> complaints = new ArrayList<>();
-		final HashMap<Integer, ArrayList<String>> versions = new HashMap<>();
-		for(PackFormat packFormat : PackFormat.values())
+		final LinkedHashSet<String> complaints = new LinkedHashSet<>();
+		this.writeEntries(index, files, outputFormat, new FileOutputStream(output), complaints);
+		return new ArrayList<>(complaints);
+	}
+
+	/**
+	 * Splits the files of a resource pack into shards by the hash of their path and creates a version of each shard for each given pack format using the given worker, so multiple processes or machines can share the work.
+	 * The partial zips are then merged into one zip per pack format by copying their entries without inflating them.
+	 *
+	 * @param outputFolder  The folder where the zips should be generated in.
+	 * @param outputFormats An array of versions you'd like to the resource pack to be compatible with.
+	 * @param shards        The number of shards to split the resource pack into.
+	 * @param worker        The worker creating each shard; all shards of a pack format are requested at the same time.
+	 * @return The zips that have been generated along with their size and digests.
+	 * @throws IOException When there are some unexpected errors with the file system or a worker has failed.
+	 */
+	public Map<PackFormat, PackResult> packSharded(File outputFolder, List<PackFormat> outputFormats, final int shards, final ShardWorker worker) throws IOException
+	{
+		if(shards < 1)
 		{
-			versions.put(packFormat.id, new ArrayList<String>());
+			throw new IllegalArgumentException("At least one shard is required.");
 		}
-		for(final String file : files)
+		final HashMap<PackFormat, PackResult> res = new HashMap<>();
+		final LinkedHashSet<String> complaints = new LinkedHashSet<>();
+		final List<String> settings = this.getShardSettings();
+		this.index(true);
+		for(final PackFormat packFormat : outputFormats)
 		{
-			if(file.substring(file.length() - 2, file.length() - 1).equals("@"))
+			LoggerFactory.getLogger(ResourcePack.class).info("Creating " + packFormat.mcversions + " version in " + shards + " shards...");
+			final File[] partials = new File[shards];
+			final ArrayList<Future<List<String>>> futures = new ArrayList<>(shards);
+			try
 			{
-				versions.get(Integer.valueOf(file.substring(file.length() - 1))).add(file);
+				for(int i = 0; i < shards; i++)
+				{
+					final int shard = i;
+					partials[i] = File.createTempFile("mcpackr-shard", ".zip", outputFolder);
+					futures.add(asyncExecutor.submit(new Callable<List<String>>()
+					{
+						@Override
+						public List<String> call() throws IOException
+						{
+							return worker.packShard(Collections.unmodifiableList(layers), settings, packFormat, shard, shards, partials[shard]);
+						}
+					}));
+				}
+				for(Future<List<String>> future : futures)
+				{
+					try
+					{
+						complaints.addAll(future.get());
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted while waiting for a shard.", e);
+					}
+					catch(ExecutionException e)
+					{
+						if(e.getCause() instanceof IOException)
+						{
+							throw (IOException) e.getCause();
+						}
+						throw new IOException("A shard of the " + packFormat.mcversions + " version has failed.", e.getCause());
+					}
+				}
+				res.put(packFormat, this.finishPort(packFormat, outputFolder, complaints, new PortWriter()
+				{
+					@Override
+					public void write(OutputStream out) throws IOException
+					{
+						mergeShards(partials, out, complaints);
+					}
+				}));
 			}
-			else
+			finally
 			{
-				for(PackFormat packFormat : PackFormat.values())
+				for(Future<List<String>> future : futures)
+				{
+					future.cancel(true);
+				}
+				for(File partial : partials)
 				{
-					if(!files.contains(file + "@" + packFormat.id))
+					if(partial != null && partial.exists() && !partial.delete())
 					{
-						versions.get(packFormat.id).add(file);
+						LoggerFactory.getLogger(ResourcePack.class).warn("Failed to delete " + partial.getPath());
 					}
 				}
 			}
 		}
+		this.verifyPorts(res.values(), complaints);
+		logComplaints(complaints);
+		return res;
+	}
+
+	/**
+	 * Decides which shard a file belongs to. {@link String#hashCode()} is specified, so every process agrees on it.
+	 */
+	static int shardOf(String file, int shards)
+	{
+		return (file.hashCode() & 0x7FFFFFFF) % shards;
+	}
+
+	private static void mergeShards(File[] partials, OutputStream out, LinkedHashSet<String> complaints) throws IOException
+	{
+		final HashSet<String> zipEntries = new HashSet<>();
+		try(RawZipWriter zip = new RawZipWriter(new BufferedOutputStream(out)))
+		{
+			for(File partial : partials)
+			{
+				try(RawZipFile shard = new RawZipFile(partial))
+				{
+					for(RawZipFile.Entry entry : shard.entries.values())
+					{
+						// Files from different shards may still be converted to the same entry.
+						if(!zipEntries.add(entry.name))
+						{
+							complain(complaints, "Tried to pack " + entry.name + " multiple times. Is this an inter-compatible resource pack?");
+							continue;
+						}
+						zip.copy(shard, entry);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets the index of the resource pack and the zips created by {@link #packAsync(File, PackFormat)}, so they will be created again on their next request, e.g. after the resource pack has been changed.
+	 */
+	public void invalidate()
+	{
+		synchronized(this.builds)
+		{
+			this.index = null;
+			this.builds.clear();
+		}
+	}
+
+	/**
+	 * Forgets the zips created by {@link #packAsync(File, PackFormat)} but keeps the index, as a setting that affects the generated files has changed.
+	 */
+	private void forgetBuilds()
+	{
+		synchronized(this.builds)
+		{
+			this.builds.clear();
+		}
+	}
+
+	private PackIndex index(boolean reindex) throws IOException
+	{
+		synchronized(this.builds)
+		{
+			if(reindex || this.index == null)
+			{
+				LoggerFactory.getLogger(ResourcePack.class).info("Indexing resource pack...");
+				this.index = new PackIndex(this.layers);
+			}
+			return this.index;
+		}
+	}
+
+	/**
+	 * Creates a base pack containing the entries which are identical across all given pack formats and, for each given pack format, an overlay pack containing only the entries that differ from the base pack.
+	 * The overlay packs are meant to be placed above the base pack in the client's pack list.
+	 * Downscaled versions and deltas can't be created for split packs, so neither {@link #setDownscaledResolutions(int...)} nor {@link #setPreviousReleases(Map)} may be set.
+	 *
+	 * @param outputFolder  The folder where the zips should be generated in.
+	 * @param outputFormats An array of versions you'd like to the resource pack to be compatible with.
+	 * @return The files that have been generated.
+	 * @throws IOException              When there are some unexpected errors with the file system.
+	 * @throws IllegalArgumentException When no pack formats are given, or downscaled versions or deltas are requested.
+	 */
+	public SplitPorts packSplit(File outputFolder, List<PackFormat> outputFormats) throws IOException
+	{
+		final Logger logger = LoggerFactory.getLogger(ResourcePack.class);
+		final String packName = this.packName();
+		if(outputFormats.isEmpty())
+		{
+			throw new IllegalArgumentException("At least one pack format is required.");
+		}
+		// The ports are built in a temporary folder, which would silently take their downscaled versions and deltas with it.
+		if(this.downscaledResolutions.length > 0 || !this.previousReleases.isEmpty())
+		{
+			throw new IllegalArgumentException("Downscaled versions and deltas can't be created for split packs.");
+		}
+		final File tempFolder = Files.createTempDirectory("mcpackr").toFile();
+		final LinkedHashMap<PackFormat, RawZipFile> ports = new LinkedHashMap<>();
+		try
+		{
+			for(Map.Entry<PackFormat, File> port : this.pack(tempFolder, outputFormats).entrySet())
+			{
+				ports.put(port.getKey(), new RawZipFile(port.getValue()));
+			}
+			logger.info("Splitting ports into base and overlay packs...");
+			final RawZipFile first = ports.values().iterator().next();
+			final LinkedHashMap<String, RawZipFile.Entry> common = new LinkedHashMap<>();
+			for(RawZipFile.Entry entry : first.entries.values())
+			{
+				if(entry.name.equals("pack.mcmeta") || entry.name.equals("pack.png"))
+				{
+					continue;
+				}
+				boolean isCommon = true;
+				for(RawZipFile port : ports.values())
+				{
+					final RawZipFile.Entry other = port.entries.get(entry.name);
+					if(other == null || !other.sameContentAs(entry))
+					{
+						isCommon = false;
+						break;
+					}
+				}
+				if(isCommon)
+				{
+					common.put(entry.name, entry);
+				}
+			}
+			final ArrayList<PackFormat> formats = new ArrayList<>(ports.keySet());
+			final PackFormat lowest = Collections.min(formats);
+			final PackFormat highest = Collections.max(formats);
+			final String mcversions = PackFormat.range(lowest, highest);
+			final File baseFile = new File(outputFolder.getPath() + "/" + packName + " (base).zip");
+			try(RawZipWriter base = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(baseFile))))
+			{
+				// Clients compare the pack_format to their own, so the lowest one keeps older clients from flagging the base pack as incompatible.
+				base.write("pack.mcmeta", this.createPackMeta(lowest.id, mcversions).getBytes());
+				final RawZipFile.Entry icon = first.entries.get("pack.png");
+				if(icon != null)
+				{
+					base.copy(first, icon);
+				}
+				for(RawZipFile.Entry entry : common.values())
+				{
+					base.copy(first, entry);
+				}
+			}
+			final HashMap<PackFormat, File> overlays = new HashMap<>();
+			for(Map.Entry<PackFormat, RawZipFile> port : ports.entrySet())
+			{
+				final File overlayFile = new File(outputFolder.getPath() + "/" + packName + " (" + port.getKey().mcversions + " overlay).zip");
+				try(RawZipWriter overlay = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(overlayFile))))
+				{
+					for(RawZipFile.Entry entry : port.getValue().entries.values())
+					{
+						if(!common.containsKey(entry.name))
+						{
+							overlay.copy(port.getValue(), entry);
+						}
+					}
+				}
+				overlays.put(port.getKey(), overlayFile);
+			}
+			logger.info("The base pack contains " + common.size() + " entries shared by all ports.");
+			return new SplitPorts(baseFile, overlays);
+		}
+		finally
+		{
+			for(RawZipFile port : ports.values())
+			{
+				port.close();
+			}
+			for(File f : Objects.requireNonNull(tempFolder.listFiles()))
+			{
+				if(!f.delete())
+				{
+					logger.warn("Failed to delete " + f.getPath());
+				}
+			}
+			if(!tempFolder.delete())
+			{
+				logger.warn("Failed to delete " + tempFolder.getPath());
+			}
+		}
+	}
+
+	/**
+	 * @return The name of the first layer without its .zip extension, which the generated zips are named after.
+	 */
+	private String packName()
+	{
+		final String name = this.folder.getName();
+		if(this.folder.isFile() && name.toLowerCase(Locale.ENGLISH).endsWith(".zip"))
+		{
+			return name.substring(0, name.length() - 4);
+		}
+		return name;
+	}
+
+	private String createPackMeta(int packFormat, String mcversions) throws IOException
+	{
+		final JsonObject packMetaObject = new JsonObject();
+		final JsonObject packObject = new JsonObject();
+		packObject.addProperty("pack_format", packFormat);
+		packObject.addProperty("description", this.index(false).packmeta
+				.get("description")
+				.getAsString()
+				.replace("%mcversions%", mcversions));
+		packMetaObject.add("pack", packObject);
+		return packMetaObject.toString();
+	}
+
+	private PackResult packFormat(final PackIndex index, final PackFormat packFormat, File outputFolder, final LinkedHashSet<String> complaints) throws IOException
+	{
+		LoggerFactory.getLogger(ResourcePack.class).info("Creating " + packFormat.mcversions + " version...");
+		return this.finishPort(packFormat, outputFolder, complaints, new PortWriter()
+		{
+			@Override
+			public void write(OutputStream out) throws IOException
+			{
+				writeEntries(index, index.get(packFormat), packFormat, out, complaints);
+			}
+		});
+	}
+
+	/**
+	 * Converts the given files of the resource pack to the given pack format and writes them as a zip to the given stream.
+	 */
+	private void writeEntries(PackIndex index, List<String> files, PackFormat packFormat, OutputStream out, LinkedHashSet<String> complaints) throws IOException
+	{
+		final JsonObject packmeta = index.packmeta;
+		final int sourcePackFormat = index.sourcePackFormat;
+		final ConversionTables ct = ConversionTables.get(sourcePackFormat, packFormat.id);
+		final BlobCache cache = this.cache;
+		final HashSet<String> zipEntries = new HashSet<>();
 		final String fromBlocksDir = (sourcePackFormat < 4 ? "blocks/" : "block/");
 		final String fromItemsDir = (sourcePackFormat < 4 ? "items/" : "item/");
-		for(PackFormat packFormat : outputFormats)
+		final String toBlocksDir = (packFormat.id < 4 ? "blocks/" : "block/");
+		final String toItemsDir = (packFormat.id < 4 ? "items/" : "item/");
+		try(AsyncZipWriter zip = new AsyncZipWriter(new BufferedOutputStream(out), WRITE_QUEUE_CAPACITY, cache);
+			PackIndex.Source packSource = index.open();
+			SourcePrefetcher prefetcher = new SourcePrefetcher(packSource, files, PREFETCH_THREADS, PREFETCH_DEPTH))
 		{
-			logger.info("Creating " + packFormat.mcversions + " version...");
-			final ConversionTables ct = ConversionTables.get(sourcePackFormat, packFormat.id);
-			final File zipFile = new File(this.folder + "/" + packName + " (" + packFormat.mcversions + ").zip");
-			final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile));
-			final ArrayList<String> zipEntries = new ArrayList<>();
-			final String toBlocksDir = (packFormat.id < 4 ? "blocks/" : "block/");
-			final String toItemsDir = (packFormat.id < 4 ? "items/" : "item/");
-			for(String file : versions.get(packFormat.id))
+			final ModelFlattener flattener = (this.flattenModels || packFormat == PackFormat.V1 ? new ModelFlattener(packSource, index.get(packFormat), complaints) : null);
+			for(String file : files)
 			{
+				final SourcePrefetcher.Prefetched prefetched = prefetcher.next();
 				String output_name = file.toLowerCase(Locale.ENGLISH);
 				final boolean isVersionSpecific = file.substring(file.length() - 2, file.length() - 1).equals("@");
 				if(isVersionSpecific)
@@ -170,9 +819,7 @@ public class ResourcePack
 							.replace("%mcversions%", packFormat.mcversions));
 					packMetaObject.add("pack", packObject);
 					final byte[] bytes = packMetaObject.toString().getBytes();
-					zip.putNextEntry(new ZipEntry(output_name));
-					zip.write(bytes, 0, bytes.length);
-					zip.closeEntry();
+					zip.write(output_name, bytes);
 					continue;
 				}
 				final String[] arr = output_name.split("/");
@@ -216,13 +863,11 @@ public class ResourcePack
 								switch(extensionless_name)
 								{
 									case "stone_slab_top":
-										addRawZipEntry(zip, zipEntries, dirname + "smooth_stone.png", Files.readAllBytes(new File(file)
-												.toPath()), complaints);
+										addRawZipEntry(zip, zipEntries, dirname + "smooth_stone.png", prefetched.read(), complaints);
 										break;
 
 									case "stone_slab_side":
-										addRawZipEntry(zip, zipEntries, dirname + "smooth_stone_slab_side.png", Files.readAllBytes(new File(file)
-												.toPath()), complaints);
+										addRawZipEntry(zip, zipEntries, dirname + "smooth_stone_slab_side.png", prefetched.read(), complaints);
 								}
 							}
 							if(packFormat.id <= 4 && sourcePackFormat >= 4)
@@ -232,8 +877,7 @@ public class ResourcePack
 									case "smooth_stone":
 										if(packFormat.id == 4)
 										{
-											addRawZipEntry(zip, zipEntries, dirname + "stone_slab_top.png", Files.readAllBytes(new File(file)
-													.toPath()), complaints);
+											addRawZipEntry(zip, zipEntries, dirname + "stone_slab_top.png", prefetched.read(), complaints);
 										}
 										else
 										{
@@ -244,8 +888,7 @@ public class ResourcePack
 									case "smooth_stone_slab_side":
 										if(packFormat.id == 4)
 										{
-											addRawZipEntry(zip, zipEntries, dirname + "stone_slab_side.png", Files.readAllBytes(new File(file)
-													.toPath()), complaints);
+											addRawZipEntry(zip, zipEntries, dirname + "stone_slab_side.png", prefetched.read(), complaints);
 										}
 										else
 										{
@@ -295,26 +938,15 @@ public class ResourcePack
 								complain(complaints, "Tried to pack " + output_name + " multiple times. Is this an inter-compatible resource pack?");
 								continue;
 							}
-							final BufferedImage img = new BufferedImage(16, 512, BufferedImage.TYPE_INT_ARGB);
-							final Graphics2D g = img.createGraphics();
+							final ArrayList<byte[]> frames = new ArrayList<>(32);
 							for(int i = 0; i < 32; i++)
 							{
-								String is = String.valueOf(i);
-								if(is.length() == 1)
-								{
-									is = "0" + is;
-								}
-								g.drawImage(ImageIO.read(new File("assets/minecraft/textures/" + fromItemsDir + "compass_" + is + ".png")), 0, i * 16, null);
+								frames.add(packSource.read("assets/minecraft/textures/" + fromItemsDir + "compass_" + twoDigitNumberString(i) + ".png"));
 							}
-							g.dispose();
-							zip.putNextEntry(new ZipEntry("assets/minecraft/textures/" + toItemsDir + "compass.png"));
-							ImageIO.write(img, "png", zip);
-							zip.closeEntry();
+							zip.write("assets/minecraft/textures/" + toItemsDir + "compass.png", Images.stack(frames, 16, 16));
 							zipEntries.add("assets/minecraft/textures/" + toItemsDir + "compass.png");
 							final byte[] bytes = "{\"animation\":{}}".getBytes();
-							zip.putNextEntry(new ZipEntry("assets/minecraft/textures/" + toItemsDir + "compass.png.mcmeta"));
-							zip.write(bytes, 0, bytes.length);
-							zip.closeEntry();
+							zip.write("assets/minecraft/textures/" + toItemsDir + "compass.png.mcmeta", bytes);
 						}
 						continue;
 					}
@@ -327,26 +959,15 @@ public class ResourcePack
 								complain(complaints, "Tried to pack " + output_name + " multiple times. Is this an inter-compatible resource pack?");
 								continue;
 							}
-							final BufferedImage img = new BufferedImage(16, 1024, BufferedImage.TYPE_INT_ARGB);
-							final Graphics2D g = img.createGraphics();
+							final ArrayList<byte[]> frames = new ArrayList<>(64);
 							for(int i = 0; i < 64; i++)
 							{
-								String is = String.valueOf(i);
-								if(is.length() == 1)
-								{
-									is = "0" + is;
-								}
-								g.drawImage(ImageIO.read(new File("assets/minecraft/textures/" + fromItemsDir + "clock_" + is + ".png")), 0, i * 16, null);
+								frames.add(packSource.read("assets/minecraft/textures/" + fromItemsDir + "clock_" + twoDigitNumberString(i) + ".png"));
 							}
-							g.dispose();
-							zip.putNextEntry(new ZipEntry("assets/minecraft/textures/" + toItemsDir + "clock.png"));
-							ImageIO.write(img, "png", zip);
-							zip.closeEntry();
+							zip.write("assets/minecraft/textures/" + toItemsDir + "clock.png", Images.stack(frames, 16, 16));
 							zipEntries.add("assets/minecraft/textures/" + toItemsDir + "clock.png");
 							final byte[] bytes = "{\"animation\":{}}".getBytes();
-							zip.putNextEntry(new ZipEntry("assets/minecraft/textures/" + toItemsDir + "clock.png.mcmeta"));
-							zip.write(bytes, 0, bytes.length);
-							zip.closeEntry();
+							zip.write("assets/minecraft/textures/" + toItemsDir + "clock.png.mcmeta", bytes);
 						}
 						continue;
 					}
@@ -360,7 +981,7 @@ public class ResourcePack
 					}
 					else if(file.equalsIgnoreCase("assets/minecraft/textures/" + fromItemsDir + "compass.png"))
 					{
-						final BufferedImage img = ImageIO.read(new File("assets/minecraft/textures/" + fromItemsDir + "compass.png"));
+						final List<byte[]> frames = Images.split(prefetched.read(), 32, 16, 16);
 						for(int i = 0; i < 32; i++)
 						{
 							if(zipEntries.contains("assets/minecraft/textures/" + toItemsDir + "compass_" + twoDigitNumberString(i) + ".png"))
@@ -368,20 +989,14 @@ public class ResourcePack
 								complain(complaints, "Tried to pack " + output_name + " multiple times. Is this an inter-compatible resource pack?");
 								continue;
 							}
-							final BufferedImage img_ = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
-							final Graphics2D g = img_.createGraphics();
-							g.drawImage(img.getSubimage(0, i * 16, 16, 16), 0, 0, null);
-							g.dispose();
-							zip.putNextEntry(new ZipEntry("assets/minecraft/textures/" + toItemsDir + "compass_" + twoDigitNumberString(i) + ".png"));
-							ImageIO.write(img_, "png", zip);
-							zip.closeEntry();
+							zip.write("assets/minecraft/textures/" + toItemsDir + "compass_" + twoDigitNumberString(i) + ".png", frames.get(i));
 							zipEntries.add("assets/minecraft/textures/" + toItemsDir + "compass_" + twoDigitNumberString(i) + ".png");
 						}
 						continue;
 					}
 					else if(file.equalsIgnoreCase("assets/minecraft/textures/" + fromItemsDir + "clock.png"))
 					{
-						final BufferedImage img = ImageIO.read(new File("assets/minecraft/textures/" + fromItemsDir + "clock.png"));
+						final List<byte[]> frames = Images.split(prefetched.read(), 64, 16, 16);
 						for(int i = 0; i < 64; i++)
 						{
 							if(zipEntries.contains("assets/minecraft/textures/" + toItemsDir + "clock_" + twoDigitNumberString(i) + ".png"))
@@ -389,13 +1004,7 @@ public class ResourcePack
 								complain(complaints, "Tried to pack " + output_name + " multiple times. Is this an inter-compatible resource pack?");
 								continue;
 							}
-							final BufferedImage img_ = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
-							final Graphics2D g = img_.createGraphics();
-							g.drawImage(img.getSubimage(0, i * 16, 16, 16), 0, 0, null);
-							g.dispose();
-							zip.putNextEntry(new ZipEntry("assets/minecraft/textures/" + toItemsDir + "clock_" + twoDigitNumberString(i) + ".png"));
-							ImageIO.write(img_, "png", zip);
-							zip.closeEntry();
+							zip.write("assets/minecraft/textures/" + toItemsDir + "clock_" + twoDigitNumberString(i) + ".png", frames.get(i));
 							zipEntries.add("assets/minecraft/textures/" + toItemsDir + "clock_" + twoDigitNumberString(i) + ".png");
 						}
 						continue;
@@ -403,12 +1012,20 @@ public class ResourcePack
 				}
 				if(sourcePackFormat >= 4 && packFormat.id < 4)
 				{
+					// The pre-1.13 particles are the top left 128x128 of the 1.13 particles, so only larger images have to be decoded and cropped.
 					if(output_name.equals("assets/minecraft/textures/particle/particles.png"))
 					{
-						zip.putNextEntry(new ZipEntry(output_name));
-						ImageIO.write(ImageIO.read(new File(file)).getSubimage(0, 0, 128, 128), "png", zip);
-						zip.closeEntry();
-						continue;
+						final PngHeader header = PngHeader.read(prefetched.read());
+						if(header == null)
+						{
+							complain(complaints, output_name + " is not a PNG image.");
+							continue;
+						}
+						if(header.width > 128 || header.height > 128)
+						{
+							zip.write(output_name, Images.crop(prefetched.read(), Math.min(header.width, 128), Math.min(header.height, 128)));
+							continue;
+						}
 					}
 					if(dirname.startsWith("assets/minecraft/optifine/"))
 					{
@@ -428,11 +1045,43 @@ public class ResourcePack
 					}
 				}
 				output_name = dirname + filename;
+				final String transform;
 				if(dirname.equals("assets/minecraft/blockstates/"))
 				{
-					jsonReader = new JsonReader(new FileReader(new File(file)));
-					jsonReader.setLenient(true);
-					final JsonObject o = jsonParser.parse(jsonReader).getAsJsonObject();
+					transform = "blockstate " + sourcePackFormat + " " + packFormat.id;
+				}
+				else if(dirname.startsWith("assets/minecraft/models/"))
+				{
+					transform = "model " + sourcePackFormat + " " + packFormat.id;
+				}
+				else
+				{
+					transform = "copy";
+					// Files that are passed through from a zip layer don't have to be compressed again.
+					if(prefetched.compressed != null)
+					{
+						addRawZipEntry(zip, zipEntries, output_name, prefetched.compressed, complaints);
+						continue;
+					}
+				}
+				final byte[] source = prefetched.read();
+				final JsonObject flattened = (flattener != null && dirname.startsWith("assets/minecraft/models/") ? flattener.flatten(file, source) : null);
+				// Flattened models also depend on their parents, so they are not cached.
+				final String cacheKey = (cache == null || flattened != null ? null : BlobCache.key(transform, source));
+				if(cacheKey != null)
+				{
+					final CompressedBlob cached = cache.get(cacheKey);
+					if(cached != null)
+					{
+						addRawZipEntry(zip, zipEntries, output_name, cached, complaints);
+						continue;
+					}
+				}
+				// Entries that caused complaints are not cached, so the complaints are repeated on the next run.
+				final int complaintCount = complaints.size();
+				if(dirname.equals("assets/minecraft/blockstates/"))
+				{
+					final JsonObject o = parseJson(source);
 					final JsonObject variants = o.get("variants").getAsJsonObject();
 					for(Map.Entry<String, JsonElement> member : variants.entrySet())
 					{
@@ -502,13 +1151,12 @@ public class ResourcePack
 						}
 						variants.add(member.getKey(), value);
 					}
-					addRawZipEntry(zip, zipEntries, output_name, o.toString().getBytes(), complaints);
+					addRawZipEntry(zip, zipEntries, output_name, o.toString().getBytes(), (complaints.size() == complaintCount ? cacheKey : null), complaints);
 				}
 				else if(dirname.startsWith("assets/minecraft/models/"))
 				{
-					jsonReader = new JsonReader(new FileReader(new File(file)));
-					jsonReader.setLenient(true);
-					final JsonObject o = jsonParser.parse(jsonReader).getAsJsonObject();
+					final JsonObject o = (flattened == null ? parseJson(source) : flattened);
+					// 1.8 doesn't allow models with elements to have a parent, so the parent provided by the game has to go.
 					if(packFormat.id == 1 && o.get("parent") != null && o.get("elements") != null)
 					{
 						o.remove("parent");
@@ -534,7 +1182,7 @@ public class ResourcePack
 							}
 							else if(path.startsWith(fromItemsDir))
 							{
-								path = path.substring(fromBlocksDir.length());
+								path = path.substring(fromItemsDir.length());
 								if(ct.textures.containsKey(path))
 								{
 									path = toItemsDir + ct.textures.get(path);
@@ -547,16 +1195,254 @@ public class ResourcePack
 							}
 						}
 					}
-					addRawZipEntry(zip, zipEntries, output_name, o.toString().getBytes(), complaints);
+					addRawZipEntry(zip, zipEntries, output_name, o.toString().getBytes(), (complaints.size() == complaintCount ? cacheKey : null), complaints);
+				}
+				else
+				{
+					addRawZipEntry(zip, zipEntries, output_name, source, cacheKey, complaints);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a port using the given writer and then, if enabled, removes unused assets and repeated animation frames from it, creates its lower resolution versions and writes its manifest.
+	 * Builds of the same zip wait for each other, and every file is written under a temporary name and then moved into place, so builds sharing an output folder never see or serve a partially written file.
+	 */
+	private PackResult finishPort(PackFormat packFormat, File outputFolder, LinkedHashSet<String> complaints, PortWriter writer) throws IOException
+	{
+		final File zipFile = new File(outputFolder.getPath() + "/" + this.packName() + " (" + packFormat.mcversions + ").zip");
+		final String path = zipFile.getCanonicalPath();
+		final Object newLock = new Object();
+		final Object lock = outputLocks.putIfAbsent(path, newLock);
+		synchronized(lock == null ? newLock : lock)
+		{
+			final ArrayList<File> temps = new ArrayList<>();
+			try
+			{
+				return this.writePort(packFormat, zipFile, outputFolder, complaints, writer, temps);
+			}
+			finally
+			{
+				for(File temp : temps)
+				{
+					Files.deleteIfExists(temp.toPath());
+				}
+			}
+		}
+	}
+
+	private PackResult writePort(PackFormat packFormat, File zipFile, File outputFolder, LinkedHashSet<String> complaints, PortWriter writer, List<File> temps) throws IOException
+	{
+		final Logger logger = LoggerFactory.getLogger(ResourcePack.class);
+		final File builtFile = tempFile(zipFile, temps);
+		final MessageDigest sha1;
+		final MessageDigest sha256;
+		try
+		{
+			sha1 = MessageDigest.getInstance("SHA-1");
+			sha256 = (this.sha256 ? MessageDigest.getInstance("SHA-256") : null);
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+		final boolean prune = (this.pruneUnusedAssets && packFormat != PackFormat.V1);
+		final boolean deduplicateFrames = this.deduplicateFrames;
+		final boolean rewrite = (prune || deduplicateFrames);
+		final File buildFile = (rewrite ? tempFile(zipFile, temps) : builtFile);
+		if(this.pruneUnusedAssets && !prune)
+		{
+			logger.info("Not removing unused assets from the " + packFormat.mcversions + " version, as 1.6 and 1.7 load textures without models.");
+		}
+		writer.write(rewrite ? new FileOutputStream(buildFile) : digestingOutputStream(builtFile, sha1, sha256));
+		List<String> pruned = Collections.emptyList();
+		if(rewrite)
+		{
+			try(RawZipFile built = new RawZipFile(buildFile);
+				RawZipWriter out = new RawZipWriter(new BufferedOutputStream(digestingOutputStream(builtFile, sha1, sha256))))
+			{
+				if(prune)
+				{
+					try
+					{
+						pruned = new AssetPruner(built, packFormat, this.pruneAllowList).findPrunable();
+					}
+					catch(JsonParseException | IllegalStateException | UnsupportedOperationException e)
+					{
+						complain(complaints, "Unused assets were not removed from the " + packFormat.mcversions + " version: " + e.getMessage());
+					}
+				}
+				final HashSet<String> prunedNames = new HashSet<>(pruned);
+				if(deduplicateFrames)
+				{
+					final int compacted = new FrameDeduplicator(built).write(out, prunedNames);
+					logger.info("Removed repeated frames from " + compacted + " animated textures in the " + packFormat.mcversions + " version.");
+				}
+				else
+				{
+					for(RawZipFile.Entry entry : built.entries.values())
+					{
+						if(!prunedNames.contains(entry.name))
+						{
+							out.copy(built, entry);
+						}
+					}
+				}
+			}
+			if(prune)
+			{
+				logger.info("Removed " + pruned.size() + " unused assets from the " + packFormat.mcversions + " version.");
+				for(String name : pruned)
+				{
+					logger.debug("Removed unused asset " + name);
+				}
+			}
+		}
+		// The delta is created before the zip is replaced, as the previous release may be the zip itself.
+		File delta = null;
+		final File previousRelease = this.previousReleases.get(packFormat);
+		if(previousRelease != null)
+		{
+			delta = this.writeDelta(previousRelease, builtFile, zipFile.getName(), new File(outputFolder.getPath() + "/" + this.packName() + " (" + packFormat.mcversions + ", delta).zip"), complaints, temps);
+		}
+		replace(builtFile, zipFile);
+		final HashMap<Integer, File> downscaled = new HashMap<>();
+		final int[] downscaledResolutions = this.downscaledResolutions;
+		if(downscaledResolutions.length > 0)
+		{
+			try(RawZipFile port = new RawZipFile(zipFile))
+			{
+				final Downscaler downscaler = new Downscaler(port);
+				if(downscaler.resolution == 0)
+				{
+					complain(complaints, "Not creating lower resolution " + packFormat.mcversions + " versions, as there are no block textures to infer the resource pack's resolution from.");
 				}
 				else
 				{
-					addRawZipEntry(zip, zipEntries, output_name, Files.readAllBytes(new File(file).toPath()), complaints);
+					for(int resolution : downscaledResolutions)
+					{
+						if(resolution >= downscaler.resolution)
+						{
+							complain(complaints, "Not creating a " + resolution + "x version, as the resource pack's resolution is " + downscaler.resolution + "x.");
+							continue;
+						}
+						logger.info("Creating " + resolution + "x " + packFormat.mcversions + " version...");
+						final File downscaledFile = new File(outputFolder.getPath() + "/" + this.packName() + " (" + packFormat.mcversions + ", " + resolution + "x).zip");
+						final File temp = tempFile(downscaledFile, temps);
+						downscaler.write(temp, resolution);
+						replace(temp, downscaledFile);
+						downscaled.put(resolution, downscaledFile);
+					}
 				}
 			}
-			zip.close();
-			res.put(packFormat, zipFile);
 		}
+		final PackResult result = new PackResult(packFormat, zipFile, zipFile.length(), PackResult.toHex(sha1.digest()), (sha256 == null ? null : PackResult.toHex(sha256.digest())), pruned, downscaled, delta);
+		final File manifestFile = new File(zipFile.getPath() + ".json");
+		if(this.writeManifest)
+		{
+			final JsonObject manifest = new JsonObject();
+			manifest.addProperty("file", zipFile.getName());
+			manifest.addProperty("pack_format", packFormat.id);
+			manifest.addProperty("size", result.size);
+			manifest.addProperty("sha1", result.sha1);
+			if(result.sha256 != null)
+			{
+				manifest.addProperty("sha256", result.sha256);
+			}
+			if(result.delta != null)
+			{
+				manifest.addProperty("delta", result.delta.getName());
+			}
+			final File temp = tempFile(manifestFile, temps);
+			Files.write(temp.toPath(), manifest.toString().getBytes());
+			replace(temp, manifestFile);
+		}
+		else
+		{
+			Files.deleteIfExists(manifestFile.toPath());
+		}
+		return result;
+	}
+
+	/**
+	 * @return A new empty file next to the given one, which is added to the given list so it's deleted if it's not moved into place.
+	 */
+	private static File tempFile(File file, List<File> temps) throws IOException
+	{
+		final File temp = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+		temps.add(temp);
+		return temp;
+	}
+
+	/**
+	 * Moves a completely written file into place, so that readers see either the previous or the new file.
+	 */
+	private static void replace(File temp, File file) throws IOException
+	{
+		try
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * @return The delta or null if it could not be created.
+	 */
+	private File writeDelta(File previousRelease, File builtFile, String name, File deltaFile, LinkedHashSet<String> complaints, List<File> temps) throws IOException
+	{
+		final ZipComparison comparison;
+		try
+		{
+			comparison = ZipComparison.compare(previousRelease, builtFile);
+		}
+		catch(IOException e)
+		{
+			complain(complaints, "Not creating a delta for " + name + ", as the previous release can't be read: " + e.getMessage());
+			return null;
+		}
+		final File temp = tempFile(deltaFile, temps);
+		comparison.writeDelta(builtFile, temp);
+		replace(temp, deltaFile);
+		LoggerFactory.getLogger(ResourcePack.class).info("Created a delta for " + name + " with " + comparison.added.size() + " added, " + comparison.changed.size() + " changed, and " + comparison.removed.size() + " removed entries.");
+		return deltaFile;
+	}
+
+	private void verifyPorts(Collection<PackResult> results, LinkedHashSet<String> complaints) throws IOException
+	{
+		if(!this.verify)
+		{
+			return;
+		}
+		final ArrayList<File> zips = new ArrayList<>();
+		for(PackResult result : results)
+		{
+			zips.add(result.file);
+			zips.addAll(result.downscaled.values());
+		}
+		LoggerFactory.getLogger(ResourcePack.class).info("Verifying " + zips.size() + " zips...");
+		for(Map.Entry<File, List<String>> verified : PackVerifier.verify(zips).entrySet())
+		{
+			for(String problem : verified.getValue())
+			{
+				complain(complaints, verified.getKey().getName() + ": " + problem);
+			}
+		}
+	}
+
+	private static OutputStream digestingOutputStream(File file, MessageDigest sha1, MessageDigest sha256) throws FileNotFoundException
+	{
+		final OutputStream out = new DigestOutputStream(new FileOutputStream(file), sha1);
+		return (sha256 == null ? out : new DigestOutputStream(out, sha256));
+	}
+
+	private static void logComplaints(LinkedHashSet<String> complaints)
+	{
+		final Logger logger = LoggerFactory.getLogger(ResourcePack.class);
 		if(complaints.size() > 0)
 		{
 			logger.info("The resource pack has been ported. However, there are some complaints:");
@@ -569,10 +1455,36 @@ public class ResourcePack
 		{
 			logger.info("The resource pack has successfully been ported.");
 		}
-		return res;
 	}
 
-	private static void addRawZipEntry(ZipOutputStream zip, ArrayList<String> zipEntries, String output_name, byte[] bytes, ArrayList<String> complaints) throws IOException
+	/**
+	 * @return true if the given file of the resource pack is a blockstate or model, which are converted for each version, while other files are mostly copied as they are.
+	 */
+	static boolean isConverted(String file)
+	{
+		final String name = file.toLowerCase(Locale.ENGLISH);
+		return name.startsWith("assets/minecraft/blockstates/") || name.startsWith("assets/minecraft/models/");
+	}
+
+	static JsonObject parseJson(byte[] bytes)
+	{
+		return parseJsonElement(bytes).getAsJsonObject();
+	}
+
+	/**
+	 * Parses JSON as leniently as the game does, e.g. allowing comments and unquoted names.
+	 */
+	static JsonElement parseJsonElement(byte[] bytes)
+	{
+		return JsonParser.parseReader(new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)));
+	}
+
+	private static void addRawZipEntry(AsyncZipWriter zip, HashSet<String> zipEntries, String output_name, byte[] bytes, LinkedHashSet<String> complaints) throws IOException
+	{
+		addRawZipEntry(zip, zipEntries, output_name, bytes, null, complaints);
+	}
+
+	private static void addRawZipEntry(AsyncZipWriter zip, HashSet<String> zipEntries, String output_name, byte[] bytes, String cacheKey, LinkedHashSet<String> complaints) throws IOException
 	{
 		if(zipEntries.contains(output_name))
 		{
@@ -580,21 +1492,29 @@ public class ResourcePack
 		}
 		else
 		{
-			zip.putNextEntry(new ZipEntry(output_name));
-			zip.write(bytes, 0, bytes.length);
-			zip.closeEntry();
+			zip.write(output_name, bytes, cacheKey);
 			zipEntries.add(output_name);
 		}
 	}
 
-	private static void complain(ArrayList<String> complaints, String complaint)
+	private static void addRawZipEntry(AsyncZipWriter zip, HashSet<String> zipEntries, String output_name, CompressedBlob blob, LinkedHashSet<String> complaints) throws IOException
 	{
-		if(!complaints.contains(complaint))
+		if(zipEntries.contains(output_name))
 		{
-			complaints.add(complaint);
+			complain(complaints, "Tried to pack " + output_name + " multiple times. Is this an inter-compatible resource pack?");
+		}
+		else
+		{
+			zip.write(output_name, blob);
+			zipEntries.add(output_name);
 		}
 	}
 
+	static void complain(LinkedHashSet<String> complaints, String complaint)
+	{
+		complaints.add(complaint);
+	}
+
 	private static String twoDigitNumberString(int i)
 	{
 		String str = String.valueOf(i);
@@ -605,43 +1525,8 @@ public class ResourcePack
 		return str;
 	}
 
-	private static ArrayList<String> recursivelyIndex(File folder, int offset, boolean root)
+	private interface PortWriter
 	{
-		final ArrayList<String> files = new ArrayList<>();
-		for(File f : Objects.requireNonNull(folder.listFiles()))
-		{
-			if(root)
-			{
-				switch(f.getName())
-				{
-					case "assets":
-						if(!f.isDirectory())
-						{
-							continue;
-						}
-						break;
-
-					case "pack.mcmeta":
-					case "pack.png":
-						if(!f.isFile())
-						{
-							continue;
-						}
-						break;
-
-					default:
-						continue;
-				}
-			}
-			if(f.isDirectory())
-			{
-				files.addAll(recursivelyIndex(f, offset, false));
-			}
-			else if(!f.getName().equals("Thumbs.db"))
-			{
-				files.add(f.getPath().substring(offset).replace("\\", "/"));
-			}
-		}
-		return files;
+		void write(OutputStream out) throws IOException;
 	}
 }
@@ -0,0 +1,27 @@
+package de.timmyrs.mcpackr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Creates the shards of a resource pack for {@link ResourcePack#packSharded(File, List, int, ShardWorker)}, e.g. by running {@link ResourcePack#packShard(File, PackFormat, int, int)} with the same settings in another process or on another machine.
+ *
+ * @see LocalProcessShardWorker
+ */
+public interface ShardWorker
+{
+	/**
+	 * Creates one shard of a version of a resource pack. This is called from multiple threads at the same time.
+	 *
+	 * @param layers       The folders or zips the resource pack is made of, from the lowest to the highest priority, as given to {@link ResourcePack#ResourcePack(List)}.
+	 * @param settings     The settings of the resource pack which affect the shard, which have to be applied using {@link ResourcePack#applyShardSettings(List)}.
+	 * @param outputFormat The version you'd like to the resource pack to be compatible with.
+	 * @param shard        The index of the shard, starting at 0.
+	 * @param shards       The number of shards the resource pack is split into.
+	 * @param output       The file the partial zip has to be written to.
+	 * @return The complaints about the files in the shard.
+	 * @throws IOException When the shard could not be created.
+	 */
+	List<String> packShard(List<File> layers, List<String> settings, PackFormat outputFormat, int shard, int shards, File output) throws IOException;
+}
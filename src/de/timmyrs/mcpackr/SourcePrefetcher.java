@@ -0,0 +1,132 @@
+package de.timmyrs.mcpackr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The first stage of the packing pipeline: reads the source files ahead of the transforms on a few threads.
+ * At most {@code depth} files are read ahead, so a slow transform stage will stall the readers instead of filling the memory.
+ * Files from zip layers which are usually copied as they are, i.e. everything except blockstates and models, are only read in their compressed form, so they aren't inflated just to be copied without it.
+ */
+class SourcePrefetcher implements Closeable
+{
+	private final PackIndex.Source source;
+	private final Iterator<String> files;
+	private final ExecutorService executor;
+	private final ArrayDeque<Future<Prefetched>> pending = new ArrayDeque<>();
+
+	SourcePrefetcher(PackIndex.Source source, List<String> files, int threads, int depth)
+	{
+		this.source = source;
+		this.files = files.iterator();
+		this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("MCPackr reader"));
+		for(int i = 0; i < depth && this.files.hasNext(); i++)
+		{
+			this.submitNext();
+		}
+	}
+
+	private void submitNext()
+	{
+		final String file = this.files.next();
+		this.pending.add(this.executor.submit(new Callable<Prefetched>()
+		{
+			@Override
+			public Prefetched call() throws IOException
+			{
+				if(!ResourcePack.isConverted(file))
+				{
+					final CompressedBlob compressed = source.readCompressed(file);
+					if(compressed != null)
+					{
+						return new Prefetched(source, file, compressed, null);
+					}
+				}
+				return new Prefetched(source, file, null, source.read(file));
+			}
+		}));
+	}
+
+	/**
+	 * Returns the next file, waiting for it to be read if necessary.
+	 */
+	Prefetched next() throws IOException
+	{
+		final Future<Prefetched> future = this.pending.poll();
+		if(future == null)
+		{
+			throw new NoSuchElementException();
+		}
+		if(this.files.hasNext())
+		{
+			this.submitNext();
+		}
+		try
+		{
+			return future.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * A file that has been read ahead, either as its contents or as its compressed bytes.
+	 */
+	static class Prefetched
+	{
+		private final PackIndex.Source source;
+		private final String file;
+		/**
+		 * The compressed bytes of the file if it comes from a zip and has not been inflated yet, or null.
+		 */
+		final CompressedBlob compressed;
+		private byte[] bytes;
+
+		private Prefetched(PackIndex.Source source, String file, CompressedBlob compressed, byte[] bytes)
+		{
+			this.source = source;
+			this.file = file;
+			this.compressed = compressed;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Returns the contents of the file, which are read and inflated on the calling thread if only the compressed bytes have been read ahead.
+		 */
+		byte[] read() throws IOException
+		{
+			if(this.bytes == null)
+			{
+				this.bytes = this.source.read(this.file);
+			}
+			return this.bytes;
+		}
+	}
+}
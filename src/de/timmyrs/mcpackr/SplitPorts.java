@@ -0,0 +1,26 @@
+package de.timmyrs.mcpackr;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * The files generated by {@link ResourcePack#packSplit(File, java.util.List)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SplitPorts
+{
+	/**
+	 * The pack containing every entry which is identical in all ports.
+	 */
+	public final File base;
+	/**
+	 * The packs containing the entries that differ from the base pack for each pack format, which are meant to be placed above the base pack.
+	 */
+	public final Map<PackFormat, File> overlays;
+
+	SplitPorts(File base, Map<PackFormat, File> overlays)
+	{
+		this.base = base;
+		this.overlays = overlays;
+	}
+}
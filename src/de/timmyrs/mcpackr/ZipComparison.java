@@ -0,0 +1,216 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences between two zips, e.g. two releases of a port or the ports of two pack formats.
+ * Entries are compared by the CRC and size in the central directories, so no entry is inflated unless a JSON diff is requested.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ZipComparison
+{
+	/**
+	 * The name of the entry listing the removed entries in a delta created by {@link ResourcePack#setPreviousReleases(Map)}, as a "removed" array in a JSON object.
+	 */
+	public static final String DELTA_MANIFEST = "delta.json";
+	/**
+	 * The entries which are only in the second zip.
+	 */
+	public final List<String> added = new ArrayList<>();
+	/**
+	 * The entries which are only in the first zip.
+	 */
+	public final List<String> removed = new ArrayList<>();
+	/**
+	 * The entries which are in both zips but have a different CRC or size.
+	 */
+	public final List<String> changed = new ArrayList<>();
+	/**
+	 * The differences of each changed JSON entry (including .mcmeta files) as "/path/to/value: old -> new" lines, if requested.
+	 */
+	public final Map<String, List<String>> jsonDifferences = new LinkedHashMap<>();
+
+	private ZipComparison()
+	{
+	}
+
+	/**
+	 * Compares two zips using only their central directories.
+	 *
+	 * @param from The old zip.
+	 * @param to   The new zip.
+	 * @return The differences between the zips.
+	 * @throws IOException When a zip can't be read.
+	 */
+	public static ZipComparison compare(File from, File to) throws IOException
+	{
+		return compare(from, to, false);
+	}
+
+	/**
+	 * Compares two zips using their central directories, and optionally inflates the changed JSON entries to list what has changed in them.
+	 *
+	 * @param from     The old zip.
+	 * @param to       The new zip.
+	 * @param jsonDiff Whether the changed JSON entries should be compared in detail.
+	 * @return The differences between the zips.
+	 * @throws IOException When a zip can't be read.
+	 */
+	public static ZipComparison compare(File from, File to, boolean jsonDiff) throws IOException
+	{
+		final ZipComparison comparison = new ZipComparison();
+		try(RawZipFile fromZip = new RawZipFile(from);
+			RawZipFile toZip = new RawZipFile(to))
+		{
+			for(RawZipFile.Entry entry : fromZip.entries.values())
+			{
+				final RawZipFile.Entry other = toZip.entries.get(entry.name);
+				if(other == null)
+				{
+					comparison.removed.add(entry.name);
+				}
+				else if(!other.sameContentAs(entry))
+				{
+					comparison.changed.add(entry.name);
+					if(jsonDiff && (entry.name.endsWith(".json") || entry.name.endsWith(".mcmeta")))
+					{
+						final ArrayList<String> differences = new ArrayList<>();
+						try
+						{
+							diff("", ResourcePack.parseJsonElement(fromZip.read(entry)), ResourcePack.parseJsonElement(toZip.read(other)), differences);
+						}
+						catch(JsonParseException e)
+						{
+							differences.add("Not valid JSON: " + e.getMessage());
+						}
+						comparison.jsonDifferences.put(entry.name, differences);
+					}
+				}
+			}
+			for(String name : toZip.entries.keySet())
+			{
+				if(!fromZip.entries.containsKey(name))
+				{
+					comparison.added.add(name);
+				}
+			}
+		}
+		Collections.sort(comparison.added);
+		Collections.sort(comparison.removed);
+		Collections.sort(comparison.changed);
+		return comparison;
+	}
+
+	/**
+	 * Writes a delta containing the added and changed entries, which are copied from the new zip without inflating them, and the {@link #DELTA_MANIFEST} listing the removed entries.
+	 *
+	 * @param to    The new zip this comparison has been created with.
+	 * @param delta The zip to write the delta to.
+	 */
+	void writeDelta(File to, File delta) throws IOException
+	{
+		try(RawZipFile toZip = new RawZipFile(to);
+			RawZipWriter out = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(delta))))
+		{
+			for(String name : this.added)
+			{
+				out.copy(toZip, toZip.entries.get(name));
+			}
+			for(String name : this.changed)
+			{
+				out.copy(toZip, toZip.entries.get(name));
+			}
+			final JsonArray removed = new JsonArray();
+			for(String name : this.removed)
+			{
+				removed.add(name);
+			}
+			final JsonObject manifest = new JsonObject();
+			manifest.add("removed", removed);
+			out.write(DELTA_MANIFEST, manifest.toString().getBytes("UTF-8"));
+		}
+	}
+
+	private static void diff(String path, JsonElement from, JsonElement to, List<String> differences)
+	{
+		if(from != null && to != null && from.isJsonObject() && to.isJsonObject())
+		{
+			final LinkedHashSet<String> keys = new LinkedHashSet<>();
+			for(Map.Entry<String, JsonElement> member : from.getAsJsonObject().entrySet())
+			{
+				keys.add(member.getKey());
+			}
+			for(Map.Entry<String, JsonElement> member : to.getAsJsonObject().entrySet())
+			{
+				keys.add(member.getKey());
+			}
+			for(String key : keys)
+			{
+				diff(path + "/" + key, from.getAsJsonObject().get(key), to.getAsJsonObject().get(key), differences);
+			}
+		}
+		else if(from != null && to != null && from.isJsonArray() && to.isJsonArray())
+		{
+			final int size = Math.max(from.getAsJsonArray().size(), to.getAsJsonArray().size());
+			for(int i = 0; i < size; i++)
+			{
+				diff(path + "/" + i, (i < from.getAsJsonArray().size() ? from.getAsJsonArray().get(i) : null), (i < to.getAsJsonArray().size() ? to.getAsJsonArray().get(i) : null), differences);
+			}
+		}
+		else if(from == null ? to != null : !from.equals(to))
+		{
+			differences.add((path.isEmpty() ? "/" : path) + ": " + from + " -> " + to);
+		}
+	}
+
+	/**
+	 * @return Whether the zips have the same entries with the same contents.
+	 */
+	public boolean isEmpty()
+	{
+		return this.added.isEmpty() && this.removed.isEmpty() && this.changed.isEmpty();
+	}
+
+	/**
+	 * @return A human-readable report with one line per added (+), removed (-), and changed (~) entry, followed by its JSON differences, if any.
+	 */
+	@Override
+	public String toString()
+	{
+		final StringBuilder report = new StringBuilder();
+		for(String name : this.added)
+		{
+			report.append("+ ").append(name).append("\n");
+		}
+		for(String name : this.removed)
+		{
+			report.append("- ").append(name).append("\n");
+		}
+		for(String name : this.changed)
+		{
+			report.append("~ ").append(name).append("\n");
+			if(this.jsonDifferences.containsKey(name))
+			{
+				for(String difference : this.jsonDifferences.get(name))
+				{
+					report.append("    ").append(difference).append("\n");
+				}
+			}
+		}
+		return report.toString();
+	}
+}
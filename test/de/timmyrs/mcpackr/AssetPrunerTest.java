@@ -0,0 +1,116 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AssetPrunerTest
+{
+	private static final String ROOT = "assets/minecraft/";
+	private File folder;
+	private LinkedHashMap<String, byte[]> entries;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		this.entries = new LinkedHashMap<>();
+		this.put("pack.mcmeta", "{\"pack\":{\"pack_format\":4,\"description\":\"\"}}");
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	private void put(String name, String content) throws IOException
+	{
+		this.entries.put(name, content.getBytes("UTF-8"));
+	}
+
+	private HashSet<String> prune(PackFormat packFormat) throws IOException
+	{
+		try(RawZipFile zip = new RawZipFile(TestFiles.zip(new File(this.folder, "port.zip"), this.entries)))
+		{
+			final List<String> prunable = new AssetPruner(zip, packFormat, AssetPruner.DEFAULT_ALLOW_LIST).findPrunable();
+			return new HashSet<>(prunable);
+		}
+	}
+
+	@Test
+	public void keepsTexturesOfPacksWithoutModels() throws IOException
+	{
+		this.put(ROOT + "textures/block/stone.png", "");
+		this.put(ROOT + "textures/block/stone.png.mcmeta", "{\"animation\":{}}");
+		this.put(ROOT + "textures/item/apple.png", "");
+		this.put(ROOT + "textures/gui/widgets.png", "");
+		assertEquals(new HashSet<String>(), this.prune(PackFormat.V4));
+	}
+
+	@Test
+	public void keepsModelsTheGameStillReferences() throws IOException
+	{
+		// Vanilla models inherit from cube_all and no blockstate of the pack uses it, so it has to stay.
+		this.put(ROOT + "models/block/cube_all.json", "{\"parent\":\"block/cube\",\"textures\":{\"particle\":\"#all\"}}");
+		this.put(ROOT + "models/item/apple.json", "{\"parent\":\"item/generated\",\"textures\":{\"layer0\":\"item/apple\"}}");
+		assertEquals(new HashSet<String>(), this.prune(PackFormat.V4));
+	}
+
+	@Test
+	public void keepsTexturesTheGamesModelsShare() throws IOException
+	{
+		// The pack's stone model no longer uses the stone texture, but the game's stone slab, stairs and button models still do.
+		this.put(ROOT + "models/block/stone.json", "{\"parent\":\"block/cube_all\",\"textures\":{\"all\":\"block/stone_alt\"}}");
+		this.put(ROOT + "textures/block/stone.png", "");
+		this.put(ROOT + "textures/block/stone_alt.png", "");
+		assertEquals(new HashSet<String>(), this.prune(PackFormat.V4));
+	}
+
+	@Test
+	public void keepsBlockModelsTheGamesItemModelsUse() throws IOException
+	{
+		// The pack's stone blockstate no longer uses the stone block model, but the game's stone item model has it as its parent.
+		this.put(ROOT + "blockstates/stone.json", "{\"variants\":{\"\":{\"model\":\"block/granite\"}}}");
+		this.put(ROOT + "models/block/stone.json", "{\"parent\":\"block/cube_all\",\"textures\":{\"all\":\"block/stone\"}}");
+		this.put(ROOT + "textures/block/stone.png", "");
+		assertEquals(new HashSet<String>(), this.prune(PackFormat.V4));
+	}
+
+	@Test
+	public void prunesWhatTheGameNeverReads() throws IOException
+	{
+		this.put(ROOT + "blockstates/stone.json", "{\"variants\":{\"\":{\"model\":\"custom/stone\"}}}");
+		this.put(ROOT + "models/custom/stone.json", "{\"parent\":\"block/cube_all\",\"textures\":{\"all\":\"block/granite\"}}");
+		this.put(ROOT + "models/custom/unused.json", "{}");
+		this.put(ROOT + "textures/block/stone.png", "");
+		this.put(ROOT + "textures/blocks/stone.png", "");
+		this.put(ROOT + "textures/blocks/stone.png.mcmeta", "{\"animation\":{}}");
+		this.put(ROOT + "textures/items/apple.png", "");
+		assertEquals(new HashSet<>(Arrays.asList(
+				ROOT + "models/custom/unused.json",
+				ROOT + "textures/blocks/stone.png",
+				ROOT + "textures/blocks/stone.png.mcmeta",
+				ROOT + "textures/items/apple.png"
+		)), this.prune(PackFormat.V4));
+	}
+
+	@Test
+	public void usesTheFoldersOfThePortsVersion() throws IOException
+	{
+		this.put(ROOT + "textures/blocks/stone.png", "");
+		this.put(ROOT + "textures/block/stone.png", "");
+		this.put(ROOT + "textures/items/apple.png", "");
+		this.put(ROOT + "textures/item/apple.png", "");
+		assertEquals(new HashSet<>(Arrays.asList(ROOT + "textures/block/stone.png", ROOT + "textures/item/apple.png")), this.prune(PackFormat.V3));
+	}
+}
@@ -0,0 +1,152 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncZipWriterTest
+{
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test(timeout = 10000)
+	public void writesQueuedEntries() throws IOException
+	{
+		final File file = new File(this.folder, "test.zip");
+		try(AsyncZipWriter zip = new AsyncZipWriter(new FileOutputStream(file), 2, null))
+		{
+			for(int i = 0; i < 100; i++)
+			{
+				zip.write("entry" + i, ("content " + i).getBytes("UTF-8"));
+			}
+		}
+		final Map<String, byte[]> entries = TestFiles.unzip(file);
+		assertEquals(100, entries.size());
+		assertArrayEquals("content 99".getBytes("UTF-8"), entries.get("entry99"));
+	}
+
+	@Test(timeout = 10000)
+	public void failsFastWhenWritingFails() throws IOException
+	{
+		assertFails(new FailingOutputStream(1000, false, false));
+	}
+
+	@Test(timeout = 10000)
+	public void failsFastWhenTheWriterThrowsARuntimeException() throws IOException
+	{
+		assertFails(new FailingOutputStream(1000, true, false));
+	}
+
+	@Test(timeout = 10000)
+	public void doesNotHangWhenClosingTheZipFails() throws IOException
+	{
+		final AsyncZipWriter zip = new AsyncZipWriter(new FailingOutputStream(Long.MAX_VALUE, false, true), 2, null);
+		zip.write("entry", new byte[10]);
+		try
+		{
+			zip.close();
+			fail("Closing should have failed");
+		}
+		catch(IOException e)
+		{
+			assertEquals("close failed", e.getMessage());
+		}
+	}
+
+	private static void assertFails(OutputStream out) throws IOException
+	{
+		final AsyncZipWriter zip = new AsyncZipWriter(out, 2, null);
+		int written = 0;
+		try
+		{
+			for(; written < 100000; written++)
+			{
+				zip.write("entry" + written, new byte[100]);
+			}
+			fail("Writing should have failed");
+		}
+		catch(IOException e)
+		{
+			assertTrue(written < 100000);
+		}
+		try
+		{
+			zip.close();
+			fail("Closing should have failed as well");
+		}
+		catch(IOException ignored)
+		{
+		}
+	}
+
+	/**
+	 * Fails once the given number of bytes has been written, or when it's closed.
+	 */
+	private static class FailingOutputStream extends FilterOutputStream
+	{
+		private final long limit;
+		private final boolean runtimeException;
+		private final boolean failOnClose;
+		private long written = 0;
+
+		FailingOutputStream(long limit, boolean runtimeException, boolean failOnClose)
+		{
+			super(new OutputStream()
+			{
+				@Override
+				public void write(int b)
+				{
+				}
+			});
+			this.limit = limit;
+			this.runtimeException = runtimeException;
+			this.failOnClose = failOnClose;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			this.written += len;
+			if(this.written > this.limit)
+			{
+				if(this.runtimeException)
+				{
+					throw new IllegalStateException("write failed");
+				}
+				throw new IOException("No space left on device");
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if(this.failOnClose)
+			{
+				throw new IOException("close failed");
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BlobCacheTest
+{
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	private static CompressedBlob compress(byte[] bytes) throws IOException
+	{
+		try(RawZipWriter writer = new RawZipWriter(new ByteArrayOutputStream()))
+		{
+			return writer.compress(bytes);
+		}
+	}
+
+	private File file(String key)
+	{
+		return new File(this.folder, key.substring(0, 2) + "/" + key);
+	}
+
+	@Test
+	public void returnsWhatWasPut() throws IOException
+	{
+		final BlobCache cache = BlobCache.open(this.folder, 1024 * 1024);
+		final byte[] source = "{\"parent\":\"block/cube_all\",\"textures\":{\"all\":\"block/stone\"}}".getBytes("UTF-8");
+		final String key = BlobCache.key("test", source);
+		assertNull(cache.get(key));
+		final CompressedBlob blob = compress(source);
+		cache.put(key, blob);
+		final CompressedBlob cached = cache.get(key);
+		assertNotNull(cached);
+		assertEquals(blob.method, cached.method);
+		assertEquals(blob.crc, cached.crc);
+		assertEquals(blob.size, cached.size);
+		assertArrayEquals(blob.data, cached.data);
+		// Another transform of the same bytes is another entry.
+		assertNull(cache.get(BlobCache.key("other", source)));
+		// No temporary files are left behind.
+		assertEquals(Collections.singletonList(key), Arrays.asList(Objects.requireNonNull(this.file(key).getParentFile().list())));
+	}
+
+	@Test
+	public void deletesCorruptEntries() throws IOException
+	{
+		final BlobCache cache = BlobCache.open(this.folder, 1024 * 1024);
+		final byte[] source = new byte[1000];
+		Arrays.fill(source, (byte) 'a');
+		final String truncatedKey = BlobCache.key("test", source);
+		cache.put(truncatedKey, compress(source));
+		final byte[] stored = Files.readAllBytes(this.file(truncatedKey).toPath());
+		Files.write(this.file(truncatedKey).toPath(), Arrays.copyOf(stored, stored.length - 2));
+		assertNull(cache.get(truncatedKey));
+		assertFalse(this.file(truncatedKey).exists());
+		final byte[] other = "abc".getBytes("UTF-8");
+		final String changedKey = BlobCache.key("test", other);
+		cache.put(changedKey, compress(other));
+		final byte[] changed = Files.readAllBytes(this.file(changedKey).toPath());
+		changed[changed.length - 1] ^= 1;
+		Files.write(this.file(changedKey).toPath(), changed);
+		assertNull(cache.get(changedKey));
+		assertFalse(this.file(changedKey).exists());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedEntries() throws IOException
+	{
+		// Each entry takes 17 + 80 bytes, so the eleventh entry exceeds the maximum size and the cache is shrunk to at most 900 bytes.
+		final BlobCache cache = BlobCache.open(this.folder, 1000);
+		final String[] keys = new String[11];
+		for(int i = 0; i < keys.length; i++)
+		{
+			final byte[] source = new byte[80];
+			new Random(i).nextBytes(source);
+			keys[i] = BlobCache.key("test", source);
+			final CompressedBlob blob = compress(source);
+			assertEquals(80, blob.data.length);
+			if(i == 10)
+			{
+				// Reading the oldest entry makes it the most recently used one.
+				assertNotNull(cache.get(keys[0]));
+			}
+			cache.put(keys[i], blob);
+			if(i < 10)
+			{
+				assertTrue(this.file(keys[i]).setLastModified(1000000000000L + i * 1000));
+			}
+		}
+		assertNotNull(cache.get(keys[0]));
+		assertNull(cache.get(keys[1]));
+		assertNull(cache.get(keys[2]));
+		for(int i = 3; i < keys.length; i++)
+		{
+			assertNotNull(cache.get(keys[i]));
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentBuildsTest
+{
+	private File folder;
+	private File pack;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		this.pack = TestFiles.createPack(this.folder, "Pack", 4);
+		for(int i = 0; i < 500; i++)
+		{
+			TestFiles.write(this.pack, "assets/minecraft/models/block/model_" + i + ".json", "{\"parent\":\"block/cube_all\",\"textures\":{\"all\":\"block/texture_" + i + "\"}}");
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test(timeout = 60000)
+	public void buildsSharingAnOutputFolderNeverExposePartialZips() throws Exception
+	{
+		final File output = new File(this.folder, "out");
+		assertTrue(output.mkdir());
+		final File zipFile = new File(output, "Pack (1.13+).zip");
+		final AtomicBoolean building = new AtomicBoolean(true);
+		final ExecutorService executor = Executors.newCachedThreadPool();
+		try
+		{
+			final Future<String> reader = executor.submit(new Callable<String>()
+			{
+				@Override
+				public String call()
+				{
+					while(building.get())
+					{
+						if(zipFile.isFile())
+						{
+							try(RawZipFile zip = new RawZipFile(zipFile))
+							{
+								if(zip.entries.size() != 501)
+								{
+									return "Saw " + zip.entries.size() + " entries";
+								}
+							}
+							catch(IOException e)
+							{
+								// The zip may be replaced between checking and opening it, but never be incomplete.
+								if(zipFile.isFile())
+								{
+									return "Saw a partial zip: " + e.getMessage();
+								}
+							}
+						}
+					}
+					return null;
+				}
+			});
+			final List<Future<PackResult>> builds = new ArrayList<>();
+			for(int i = 0; i < 8; i++)
+			{
+				final ResourcePack resourcePack = new ResourcePack(this.pack);
+				final boolean async = (i % 2 == 0);
+				builds.add(executor.submit(new Callable<PackResult>()
+				{
+					@Override
+					public PackResult call() throws Exception
+					{
+						if(async)
+						{
+							return resourcePack.packAsync(output, PackFormat.V4).get();
+						}
+						return resourcePack.packWithDigests(output, Collections.singletonList(PackFormat.V4)).get(PackFormat.V4);
+					}
+				}));
+			}
+			final HashSet<String> sha1s = new HashSet<>();
+			for(Future<PackResult> build : builds)
+			{
+				sha1s.add(build.get().sha1);
+			}
+			building.set(false);
+			assertNull(reader.get());
+			// The last build to finish left its zip, and no temporary files are left over.
+			assertTrue(sha1s.contains(PackResult.toHex(MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(zipFile.toPath())))));
+			final File[] files = output.listFiles();
+			assertEquals(1, files.length);
+			assertEquals(zipFile.getName(), files[0].getName());
+		}
+		finally
+		{
+			building.set(false);
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void changingSettingsCreatesTheZipsAgain() throws Exception
+	{
+		final File output = new File(this.folder, "out");
+		assertTrue(output.mkdir());
+		TestFiles.write(this.pack, "assets/minecraft/models/custom/unused.json", "{}");
+		final ResourcePack resourcePack = new ResourcePack(this.pack);
+		final Future<PackResult> first = resourcePack.packAsync(output, PackFormat.V4);
+		assertTrue(first.get().prunedAssets.isEmpty());
+		assertSame(first, resourcePack.packAsync(output, PackFormat.V4));
+		// Unused assets are only pruned if the zip is created again.
+		final PackResult pruned = resourcePack.setPruneUnusedAssets(true).packAsync(output, PackFormat.V4).get();
+		assertEquals(Collections.singletonList("assets/minecraft/models/custom/unused.json"), pruned.prunedAssets);
+		assertNull(pruned.sha256);
+		assertNotNull(resourcePack.setSha256(true).packAsync(output, PackFormat.V4).get().sha256);
+	}
+}
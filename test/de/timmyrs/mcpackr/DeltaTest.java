@@ -0,0 +1,78 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaTest
+{
+	private static final String TEXTURES = "assets/minecraft/textures/block/";
+	private File folder;
+	private File pack;
+	private File output;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		this.pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(this.pack, TEXTURES + "stone.png", new byte[]{1});
+		TestFiles.write(this.pack, TEXTURES + "dirt.png", new byte[]{2});
+		TestFiles.write(this.pack, TEXTURES + "sand.png", new byte[]{3});
+		this.output = new File(this.folder, "out");
+		assertTrue(this.output.mkdir());
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test
+	public void comparesAgainstThePreviousReleaseInTheOutputFolder() throws IOException
+	{
+		final List<PackFormat> formats = Collections.singletonList(PackFormat.V4);
+		final File previous = new ResourcePack(this.pack).pack(this.output, formats).get(PackFormat.V4);
+		final byte[] previousBytes = Files.readAllBytes(previous.toPath());
+		TestFiles.write(this.pack, TEXTURES + "stone.png", new byte[]{4});
+		TestFiles.delete(new File(this.pack, TEXTURES + "dirt.png"));
+		TestFiles.write(this.pack, TEXTURES + "gravel.png", new byte[]{5});
+		final Map<PackFormat, PackResult> results = new ResourcePack(this.pack).setPreviousReleases(Collections.singletonMap(PackFormat.V4, previous)).packWithDigests(this.output, formats);
+		final PackResult result = results.get(PackFormat.V4);
+		assertEquals(previous, result.file);
+		assertNotNull(result.delta);
+		final Map<String, byte[]> delta = TestFiles.unzip(result.delta);
+		assertEquals(new HashSet<>(Arrays.asList(TEXTURES + "stone.png", TEXTURES + "gravel.png", ZipComparison.DELTA_MANIFEST)), delta.keySet());
+		assertArrayEquals(new byte[]{4}, delta.get(TEXTURES + "stone.png"));
+		final JsonArray removed = ResourcePack.parseJson(delta.get(ZipComparison.DELTA_MANIFEST)).get("removed").getAsJsonArray();
+		assertEquals(1, removed.size());
+		assertEquals(TEXTURES + "dirt.png", removed.get(0).getAsString());
+		// Applying the delta to the previous release results in the new release.
+		final Map<String, byte[]> applied = TestFiles.unzip(TestFiles.write(this.folder, "previous.zip", previousBytes));
+		applied.remove(TEXTURES + "dirt.png");
+		delta.remove(ZipComparison.DELTA_MANIFEST);
+		applied.putAll(delta);
+		final Map<String, byte[]> current = TestFiles.unzip(result.file);
+		assertEquals(current.keySet(), applied.keySet());
+		for(Map.Entry<String, byte[]> entry : current.entrySet())
+		{
+			assertArrayEquals(entry.getKey(), entry.getValue(), applied.get(entry.getKey()));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownscalerTest
+{
+	private static final String ROOT = "assets/minecraft/";
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test
+	public void scalesBlockAndItemTexturesOnly() throws IOException
+	{
+		final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("pack.mcmeta", "{\"pack\":{\"pack_format\":4,\"description\":\"\"}}".getBytes("UTF-8"));
+		entries.put(ROOT + "textures/block/stone.png", TestFiles.strip(32, 0xFF808080));
+		entries.put(ROOT + "textures/block/dirt.png", TestFiles.strip(32, 0xFF806040));
+		entries.put(ROOT + "textures/block/fire_0.png", TestFiles.strip(32, 0xFFFF0000, 0xFFFFFF00));
+		entries.put(ROOT + "textures/block/fire_0.png.mcmeta", "{\"animation\":{}}".getBytes("UTF-8"));
+		entries.put(ROOT + "textures/item/apple.png", TestFiles.strip(32, 0xFFFF0000));
+		entries.put(ROOT + "textures/gui/title/minecraft.png", TestFiles.strip(256, 0xFF000000));
+		entries.put(ROOT + "textures/entity/pig.png", TestFiles.strip(64, 0xFFFFC0C0));
+		final Map<String, byte[]> scaled;
+		try(RawZipFile port = new RawZipFile(TestFiles.zip(new File(this.folder, "port.zip"), entries)))
+		{
+			final Downscaler downscaler = new Downscaler(port);
+			assertEquals(32, downscaler.resolution);
+			final File file = new File(this.folder, "port 16x.zip");
+			downscaler.write(file, 16);
+			scaled = TestFiles.unzip(file);
+		}
+		assertEquals(entries.keySet(), scaled.keySet());
+		assertSize(16, 16, scaled.get(ROOT + "textures/block/stone.png"));
+		assertSize(16, 32, scaled.get(ROOT + "textures/block/fire_0.png"));
+		assertSize(16, 16, scaled.get(ROOT + "textures/item/apple.png"));
+		for(String name : new String[]{"pack.mcmeta", ROOT + "textures/block/fire_0.png.mcmeta", ROOT + "textures/gui/title/minecraft.png", ROOT + "textures/entity/pig.png"})
+		{
+			assertArrayEquals(name, entries.get(name), scaled.get(name));
+		}
+	}
+
+	private static void assertSize(int width, int height, byte[] png)
+	{
+		final PngHeader header = PngHeader.read(png);
+		assertEquals(width, header.width);
+		assertEquals(height, header.height);
+	}
+
+	@Test
+	public void skipsPortsWithoutBlockTextures() throws IOException
+	{
+		final File pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(pack, ROOT + "textures/item/apple.png", TestFiles.strip(32, 0xFFFF0000));
+		final File output = new File(this.folder, "out");
+		assertTrue(output.mkdir());
+		final PackResult result = new ResourcePack(pack).setDownscaledResolutions(16).packWithDigests(output, Collections.singletonList(PackFormat.V4)).get(PackFormat.V4);
+		try(RawZipFile port = new RawZipFile(result.file))
+		{
+			assertEquals(0, new Downscaler(port).resolution);
+		}
+		assertTrue(result.downscaled.isEmpty());
+		assertEquals(Collections.singletonList(result.file.getName()), Arrays.asList(Objects.requireNonNull(output.list())));
+	}
+}
@@ -0,0 +1,175 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FrameDeduplicatorTest
+{
+	private static final int A = 0xFFFF0000;
+	private static final int B = 0xFF00FF00;
+	private static final int C = 0xFF0000FF;
+
+	/**
+	 * @return The colour of each shown frame and how many ticks it's shown for, in the order the animation shows them.
+	 */
+	private static List<int[]> keyframes(byte[] png, byte[] mcmeta) throws IOException
+	{
+		final BufferedImage strip = Images.read(png);
+		final JsonObject animation = ResourcePack.parseJson(mcmeta).get("animation").getAsJsonObject();
+		final int frametime = (animation.get("frametime") == null ? 1 : animation.get("frametime").getAsInt());
+		final int size = strip.getWidth();
+		final ArrayList<int[]> keyframes = new ArrayList<>();
+		if(animation.get("frames") == null)
+		{
+			for(int i = 0; i < strip.getHeight() / size; i++)
+			{
+				keyframes.add(new int[]{strip.getRGB(0, i * size), frametime});
+			}
+			return keyframes;
+		}
+		for(JsonElement frame : animation.get("frames").getAsJsonArray())
+		{
+			if(frame.isJsonObject())
+			{
+				final JsonObject o = frame.getAsJsonObject();
+				keyframes.add(new int[]{strip.getRGB(0, o.get("index").getAsInt() * size), (o.get("time") == null ? frametime : o.get("time").getAsInt())});
+			}
+			else
+			{
+				keyframes.add(new int[]{strip.getRGB(0, frame.getAsInt() * size), frametime});
+			}
+		}
+		return keyframes;
+	}
+
+	/**
+	 * @return The colour shown in each tick of one loop of the animation.
+	 */
+	private static List<Integer> ticks(List<int[]> keyframes)
+	{
+		final ArrayList<Integer> ticks = new ArrayList<>();
+		for(int[] keyframe : keyframes)
+		{
+			for(int i = 0; i < keyframe[1]; i++)
+			{
+				ticks.add(keyframe[0]);
+			}
+		}
+		return ticks;
+	}
+
+	private static String toString(List<int[]> keyframes)
+	{
+		final StringBuilder sb = new StringBuilder();
+		for(int[] keyframe : keyframes)
+		{
+			sb.append(Integer.toHexString(keyframe[0])).append('x').append(keyframe[1]).append(' ');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void mergesRepeatedFramesWithoutInterpolation() throws IOException
+	{
+		final byte[] png = TestFiles.strip(4, A, B, A, A, C);
+		final byte[] mcmeta = "{\"animation\":{\"frametime\":2}}".getBytes("UTF-8");
+		final byte[][] compacted = FrameDeduplicator.compact(png, mcmeta);
+		assertEquals(4 * 3, PngHeader.read(compacted[0]).height);
+		final List<int[]> keyframes = keyframes(compacted[0], compacted[1]);
+		assertEquals(ticks(keyframes(png, mcmeta)), ticks(keyframes));
+		// Showing A twice in a row is merged into showing it once for twice as long.
+		assertEquals(Integer.toHexString(A) + "x2 " + Integer.toHexString(B) + "x2 " + Integer.toHexString(A) + "x4 " + Integer.toHexString(C) + "x2 ", toString(keyframes));
+		assertEquals("[0,1,{\"index\":0,\"time\":4},2]", ResourcePack.parseJson(compacted[1]).get("animation").getAsJsonObject().get("frames").toString());
+	}
+
+	@Test
+	public void keepsEveryFrameWithInterpolation() throws IOException
+	{
+		final byte[] png = TestFiles.strip(4, A, B, A, A, C);
+		final byte[] mcmeta = "{\"animation\":{\"frametime\":3,\"interpolate\":true}}".getBytes("UTF-8");
+		final byte[][] compacted = FrameDeduplicator.compact(png, mcmeta);
+		assertEquals(4 * 3, PngHeader.read(compacted[0]).height);
+		// Interpolation blends each frame into the next one, so repeated frames must not be merged.
+		assertEquals(toString(keyframes(png, mcmeta)), toString(keyframes(compacted[0], compacted[1])));
+		assertEquals("[0,1,0,0,2]", ResourcePack.parseJson(compacted[1]).get("animation").getAsJsonObject().get("frames").toString());
+	}
+
+	@Test
+	public void keepsTheTimesOfListedFrames() throws IOException
+	{
+		final byte[] png = TestFiles.strip(4, A, A, B, C);
+		final byte[] mcmeta = "{\"animation\":{\"frames\":[{\"index\":1,\"time\":5},0,{\"index\":3,\"time\":2},1]}}".getBytes("UTF-8");
+		final byte[][] compacted = FrameDeduplicator.compact(png, mcmeta);
+		// B is never shown, so it's dropped along with the repeated A.
+		assertEquals(4 * 2, PngHeader.read(compacted[0]).height);
+		assertEquals(ticks(keyframes(png, mcmeta)), ticks(keyframes(compacted[0], compacted[1])));
+		assertEquals("[{\"index\":0,\"time\":6},{\"index\":1,\"time\":2},0]", ResourcePack.parseJson(compacted[1]).get("animation").getAsJsonObject().get("frames").toString());
+	}
+
+	@Test
+	public void leavesAnimationsWithoutRepeatedFramesAlone() throws IOException
+	{
+		assertNull(FrameDeduplicator.compact(TestFiles.strip(4, A, B, C), "{\"animation\":{}}".getBytes("UTF-8")));
+		assertNull(FrameDeduplicator.compact(TestFiles.strip(4, A), "{\"animation\":{}}".getBytes("UTF-8")));
+		assertNull(FrameDeduplicator.compact(TestFiles.strip(4, A, A), "{\"animation\":{\"width\":2}}".getBytes("UTF-8")));
+		assertNull(FrameDeduplicator.compact(TestFiles.strip(4, A, A), "{}".getBytes("UTF-8")));
+	}
+
+	@Test
+	public void writesEveryEntryInOrder() throws IOException
+	{
+		final File folder = TestFiles.createTempFolder();
+		try
+		{
+			final String textures = "assets/minecraft/textures/block/";
+			final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>();
+			entries.put("pack.mcmeta", "{\"pack\":{\"pack_format\":4,\"description\":\"\"}}".getBytes("UTF-8"));
+			// The metadata may come before its texture.
+			entries.put(textures + "fire.png.mcmeta", "{\"animation\":{}}".getBytes("UTF-8"));
+			entries.put(textures + "stone.png", TestFiles.strip(4, A));
+			entries.put(textures + "fire.png", TestFiles.strip(4, A, A, B));
+			entries.put(textures + "lava.png", TestFiles.strip(4, A, B));
+			entries.put(textures + "lava.png.mcmeta", "{\"animation\":{}}".getBytes("UTF-8"));
+			entries.put(textures + "unused.png", TestFiles.strip(4, A, A));
+			entries.put(textures + "unused.png.mcmeta", "{\"animation\":{}}".getBytes("UTF-8"));
+			final File compactedFile = new File(folder, "compacted.zip");
+			final int compacted;
+			try(RawZipFile port = new RawZipFile(TestFiles.zip(new File(folder, "port.zip"), entries));
+				RawZipWriter out = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(compactedFile))))
+			{
+				compacted = new FrameDeduplicator(port).write(out, new HashSet<>(Arrays.asList(textures + "unused.png", textures + "unused.png.mcmeta")));
+			}
+			assertEquals(1, compacted);
+			final Map<String, byte[]> written = TestFiles.unzip(compactedFile);
+			assertEquals(Arrays.asList("pack.mcmeta", textures + "fire.png.mcmeta", textures + "stone.png", textures + "fire.png", textures + "lava.png", textures + "lava.png.mcmeta"), new ArrayList<>(written.keySet()));
+			final byte[][] fire = FrameDeduplicator.compact(entries.get(textures + "fire.png"), entries.get(textures + "fire.png.mcmeta"));
+			assertArrayEquals(fire[0], written.get(textures + "fire.png"));
+			assertArrayEquals(fire[1], written.get(textures + "fire.png.mcmeta"));
+			for(String name : new String[]{"pack.mcmeta", textures + "stone.png", textures + "lava.png", textures + "lava.png.mcmeta"})
+			{
+				assertArrayEquals(name, entries.get(name), written.get(name));
+			}
+		}
+		finally
+		{
+			TestFiles.delete(folder);
+		}
+	}
+}
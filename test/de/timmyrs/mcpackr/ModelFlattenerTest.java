@@ -0,0 +1,84 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModelFlattenerTest
+{
+	private static final String MODELS = "assets/minecraft/models/";
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	private static JsonObject json(String json) throws IOException
+	{
+		return ResourcePack.parseJson(json.getBytes("UTF-8"));
+	}
+
+	@Test
+	public void mergesLikeTheGame() throws IOException
+	{
+		final JsonObject parent = json("{\"parent\":\"block/block\",\"ambientocclusion\":false,\"textures\":{\"particle\":\"#side\",\"side\":\"block/stone\"},\"display\":{\"gui\":{\"scale\":[1,1,1]},\"head\":{\"scale\":[2,2,2]}},\"elements\":[{\"from\":[0,0,0],\"to\":[16,16,16]}]}");
+		final JsonObject child = json("{\"parent\":\"block/shiny\",\"textures\":{\"side\":\"block/granite\",\"top\":\"block/diorite\"},\"display\":{\"gui\":{\"scale\":[3,3,3]}},\"overrides\":[{\"predicate\":{\"damage\":0.5},\"model\":\"item/broken\"}]}");
+		final String parentBefore = parent.toString();
+		final String childBefore = child.toString();
+		assertEquals(json("{\"parent\":\"block/block\",\"textures\":{\"particle\":\"#side\",\"side\":\"block/granite\",\"top\":\"block/diorite\"},\"display\":{\"gui\":{\"scale\":[3,3,3]},\"head\":{\"scale\":[2,2,2]}},\"overrides\":[{\"predicate\":{\"damage\":0.5},\"model\":\"item/broken\"}],\"elements\":[{\"from\":[0,0,0],\"to\":[16,16,16]}],\"ambientocclusion\":false}"), ModelFlattener.merge(parent, child));
+		// Neither model is changed, as resolved parents are shared by all of their children.
+		assertEquals(parentBefore, parent.toString());
+		assertEquals(childBefore, child.toString());
+	}
+
+	@Test
+	public void keepsTheChildsElementsAndDoesNotInheritOverrides() throws IOException
+	{
+		final JsonObject merged = ModelFlattener.merge(
+				json("{\"elements\":[{\"from\":[0,0,0],\"to\":[16,16,16]}],\"overrides\":[{\"predicate\":{\"pulling\":1},\"model\":\"item/bow_pulling_0\"}]}"),
+				json("{\"elements\":[{\"from\":[4,4,4],\"to\":[12,12,12]}],\"ambientocclusion\":true}"));
+		assertEquals(json("{\"elements\":[{\"from\":[4,4,4],\"to\":[12,12,12]}],\"ambientocclusion\":true}"), merged);
+		assertNull(merged.get("parent"));
+	}
+
+	@Test
+	public void flattensChainsOfParentsInThePack() throws IOException
+	{
+		final File pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(pack, MODELS + "block/base.json", "{\"parent\":\"block/cube\",\"textures\":{\"particle\":\"#all\",\"down\":\"#all\"}}");
+		TestFiles.write(pack, MODELS + "block/middle.json", "{\"parent\":\"minecraft:block/base\",\"textures\":{\"all\":\"block/stone\"}}");
+		TestFiles.write(pack, MODELS + "block/leaf.json", "{\"parent\":\"block/middle\",\"textures\":{\"all\":\"block/granite\"}}");
+		TestFiles.write(pack, MODELS + "block/loop_a.json", "{\"parent\":\"block/loop_b\"}");
+		TestFiles.write(pack, MODELS + "block/loop_b.json", "{\"parent\":\"block/loop_a\"}");
+		final PackIndex index = new PackIndex(Collections.singletonList(pack));
+		final LinkedHashSet<String> complaints = new LinkedHashSet<>();
+		try(PackIndex.Source source = index.open())
+		{
+			final ModelFlattener flattener = new ModelFlattener(source, index.get(PackFormat.V4), complaints);
+			assertEquals(json("{\"parent\":\"block/cube\",\"textures\":{\"particle\":\"#all\",\"down\":\"#all\",\"all\":\"block/granite\"}}"), flattener.flatten(MODELS + "block/leaf.json", source.read(MODELS + "block/leaf.json")));
+			// Models whose parents are all provided by the game are left as they are.
+			assertNull(flattener.flatten(MODELS + "block/base.json", source.read(MODELS + "block/base.json")));
+			flattener.flatten(MODELS + "block/loop_a.json", source.read(MODELS + "block/loop_a.json"));
+		}
+		assertEquals(1, complaints.size());
+		assertTrue(complaints.iterator().next().contains("cycle"));
+	}
+}
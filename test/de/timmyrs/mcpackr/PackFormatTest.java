@@ -0,0 +1,36 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PackFormatTest
+{
+	@Test
+	public void describesRangesOfPackFormats()
+	{
+		assertEquals("1.6.1 - 1.12.2", PackFormat.range(PackFormat.V1, PackFormat.V3));
+		assertEquals("1.9+", PackFormat.range(PackFormat.V2, PackFormat.V4));
+		assertEquals("1.13+", PackFormat.range(PackFormat.V4, PackFormat.V4));
+		assertEquals("1.11 - 1.12.2", PackFormat.range(PackFormat.V3, PackFormat.V3));
+	}
+
+	@Test
+	public void mapsVersionsAndProtocols()
+	{
+		assertEquals(PackFormat.V1, PackFormat.fromVersion("1.8.9"));
+		assertEquals(PackFormat.V2, PackFormat.fromVersion("1.10"));
+		assertEquals(PackFormat.V3, PackFormat.fromVersion("1.12.2"));
+		assertEquals(PackFormat.V4, PackFormat.fromVersion("1.14.4"));
+		assertNull(PackFormat.fromVersion("1.5.2"));
+		assertNull(PackFormat.fromVersion("b1.7"));
+		assertEquals(PackFormat.V1, PackFormat.fromProtocol(47));
+		assertEquals(PackFormat.V2, PackFormat.fromProtocol(210));
+		assertEquals(PackFormat.V3, PackFormat.fromProtocol(340));
+		assertEquals(PackFormat.V4, PackFormat.fromProtocol(404));
+		assertNull(PackFormat.fromProtocol(3));
+		assertEquals(PackFormat.V3, PackFormat.fromId(3));
+		assertNull(PackFormat.fromId(5));
+	}
+}
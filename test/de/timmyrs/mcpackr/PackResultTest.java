@@ -0,0 +1,88 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PackResultTest
+{
+	private File folder;
+	private File pack;
+	private File output;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		this.pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(this.pack, "assets/minecraft/textures/block/stone.png", TestFiles.strip(16, 0xFF808080));
+		TestFiles.write(this.pack, "assets/minecraft/textures/block/magma.png", TestFiles.strip(16, 0xFFFF0000, 0xFFFF0000, 0xFF800000));
+		TestFiles.write(this.pack, "assets/minecraft/textures/block/magma.png.mcmeta", "{\"animation\":{}}");
+		TestFiles.write(this.pack, "assets/minecraft/models/custom/unused.json", "{}");
+		this.output = new File(this.folder, "out");
+		assertTrue(this.output.mkdir());
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	private static String digest(String algorithm, File file) throws Exception
+	{
+		return PackResult.toHex(MessageDigest.getInstance(algorithm).digest(Files.readAllBytes(file.toPath())));
+	}
+
+	@Test
+	public void digestsMatchTheZipsAndTheirManifests() throws Exception
+	{
+		// Pruning and removing repeated frames rewrite the zips after they have been written, so the digests have to be of the final zips.
+		final Map<PackFormat, PackResult> results = new ResourcePack(this.pack).setSha256(true).setWriteManifest(true).setPruneUnusedAssets(true).setDeduplicateFrames(true).packWithDigests(this.output, Arrays.asList(PackFormat.V1, PackFormat.V4));
+		assertEquals(2, results.size());
+		for(PackResult result : results.values())
+		{
+			final String sha1 = digest("SHA-1", result.file);
+			final String sha256 = digest("SHA-256", result.file);
+			assertEquals(result.file.length(), result.size);
+			assertEquals(sha1, result.sha1);
+			assertEquals(sha256, result.sha256);
+			final JsonObject manifest = ResourcePack.parseJson(Files.readAllBytes(new File(result.file.getPath() + ".json").toPath()));
+			assertEquals(result.file.getName(), manifest.get("file").getAsString());
+			assertEquals(result.packFormat.id, manifest.get("pack_format").getAsInt());
+			assertEquals(result.size, manifest.get("size").getAsLong());
+			assertEquals(sha1, manifest.get("sha1").getAsString());
+			assertEquals(sha256, manifest.get("sha256").getAsString());
+		}
+		assertFalse(results.get(PackFormat.V4).prunedAssets.isEmpty());
+	}
+
+	@Test
+	public void sha256AndManifestAreOptional() throws Exception
+	{
+		final ResourcePack resourcePack = new ResourcePack(this.pack).setWriteManifest(true);
+		PackResult result = resourcePack.packWithDigests(this.output, Collections.singletonList(PackFormat.V4)).get(PackFormat.V4);
+		assertEquals(digest("SHA-1", result.file), result.sha1);
+		assertNull(result.sha256);
+		final File manifestFile = new File(result.file.getPath() + ".json");
+		assertNull(ResourcePack.parseJson(Files.readAllBytes(manifestFile.toPath())).get("sha256"));
+		// Manifests of earlier runs are removed, so they never describe another version of the zip.
+		result = resourcePack.setWriteManifest(false).packWithDigests(this.output, Collections.singletonList(PackFormat.V4)).get(PackFormat.V4);
+		assertEquals(digest("SHA-1", result.file), result.sha1);
+		assertFalse(manifestFile.exists());
+	}
+}
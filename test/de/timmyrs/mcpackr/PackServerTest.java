@@ -0,0 +1,154 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackServerTest
+{
+	private File folder;
+	private File output;
+	private ResourcePack resourcePack;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		final File pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(pack, "assets/minecraft/textures/block/stone.png", TestFiles.strip(16, 0xFF808080));
+		TestFiles.write(pack, "assets/minecraft/models/block/stone.json", "{\"parent\":\"block/cube_all\",\"textures\":{\"all\":\"block/stone\"}}");
+		this.output = new File(this.folder, "out");
+		assertTrue(this.output.mkdir());
+		this.resourcePack = new ResourcePack(pack);
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	private PackServer start(long maxCacheSize) throws IOException
+	{
+		return new PackServer(this.resourcePack, this.output, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxCacheSize).start();
+	}
+
+	private static HttpURLConnection request(PackServer server, String query, String... headers) throws IOException
+	{
+		final HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/" + query).openConnection();
+		for(int i = 0; i < headers.length; i += 2)
+		{
+			connection.setRequestProperty(headers[i], headers[i + 1]);
+		}
+		return connection;
+	}
+
+	private static byte[] body(HttpURLConnection connection) throws IOException
+	{
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try(InputStream in = connection.getInputStream())
+		{
+			final byte[] buffer = new byte[8192];
+			int read;
+			while((read = in.read(buffer)) != -1)
+			{
+				body.write(buffer, 0, read);
+			}
+		}
+		return body.toByteArray();
+	}
+
+	@Test
+	public void answersWithTheEtagOfThePort() throws Exception
+	{
+		try(PackServer server = this.start(1024 * 1024))
+		{
+			final HttpURLConnection connection = request(server, "?format=4");
+			assertEquals(200, connection.getResponseCode());
+			final byte[] body = body(connection);
+			final PackResult result = this.resourcePack.packAsync(this.output, PackFormat.V4).get();
+			assertArrayEquals(Files.readAllBytes(result.file.toPath()), body);
+			assertEquals("\"" + result.sha1 + "\"", connection.getHeaderField("ETag"));
+			assertEquals(304, request(server, "?version=1.13.2", "If-None-Match", "\"" + result.sha1 + "\"").getResponseCode());
+			assertEquals(200, request(server, "?format=4", "If-None-Match", "\"0000\"").getResponseCode());
+		}
+	}
+
+	@Test
+	public void answersRangesFromMemoryAndFromDisk() throws Exception
+	{
+		// A maximum cache size of 0 makes the server stream the zip from disk.
+		for(long maxCacheSize : new long[]{1024 * 1024, 0})
+		{
+			try(PackServer server = this.start(maxCacheSize))
+			{
+				final PackResult result = this.resourcePack.packAsync(this.output, PackFormat.V3).get();
+				final byte[] zip = Files.readAllBytes(result.file.toPath());
+				HttpURLConnection connection = request(server, "?protocol=340", "Range", "bytes=10-19");
+				assertEquals(206, connection.getResponseCode());
+				assertEquals("bytes 10-19/" + zip.length, connection.getHeaderField("Content-Range"));
+				assertArrayEquals(Arrays.copyOfRange(zip, 10, 20), body(connection));
+				connection = request(server, "?protocol=340", "Range", "bytes=-5");
+				assertEquals(206, connection.getResponseCode());
+				assertArrayEquals(Arrays.copyOfRange(zip, zip.length - 5, zip.length), body(connection));
+				// Ranges of another version of the zip are ignored.
+				connection = request(server, "?protocol=340", "Range", "bytes=10-19", "If-Range", "\"0000\"");
+				assertEquals(200, connection.getResponseCode());
+				assertArrayEquals(zip, body(connection));
+				connection = request(server, "?protocol=340", "Range", "bytes=" + zip.length + "-");
+				assertEquals(416, connection.getResponseCode());
+				assertEquals("bytes */" + zip.length, connection.getHeaderField("Content-Range"));
+			}
+		}
+	}
+
+	@Test
+	public void servesTheLatestBuildAfterAnInvalidation() throws Exception
+	{
+		try(PackServer server = this.start(0))
+		{
+			final String before = request(server, "?format=4").getHeaderField("ETag");
+			TestFiles.write(new File(this.folder, "Pack"), "assets/minecraft/textures/block/dirt.png", TestFiles.strip(16, 0xFF604020));
+			this.resourcePack.invalidate();
+			final HttpURLConnection connection = request(server, "?format=4");
+			assertEquals(200, connection.getResponseCode());
+			final byte[] body = body(connection);
+			final PackResult result = this.resourcePack.packAsync(this.output, PackFormat.V4).get();
+			assertNotEquals(before, connection.getHeaderField("ETag"));
+			assertEquals("\"" + result.sha1 + "\"", connection.getHeaderField("ETag"));
+			assertArrayEquals(Files.readAllBytes(result.file.toPath()), body);
+		}
+	}
+
+	@Test
+	public void rejectsInvalidQueries() throws IOException
+	{
+		try(PackServer server = this.start(1024 * 1024))
+		{
+			assertEquals(400, request(server, "?version=%zz").getResponseCode());
+			assertEquals(400, request(server, "?protocol=abc").getResponseCode());
+			assertEquals(400, request(server, "?format=4.0").getResponseCode());
+			assertEquals(404, request(server, "?version=1.5.2").getResponseCode());
+			assertEquals(404, request(server, "?format=99").getResponseCode());
+			final HttpURLConnection post = request(server, "");
+			post.setRequestMethod("POST");
+			assertEquals(405, post.getResponseCode());
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackVerifierTest
+{
+	private static final String ROOT = "assets/minecraft/";
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	private List<String> verify(int packFormat, String... entries) throws IOException
+	{
+		final LinkedHashMap<String, byte[]> zip = new LinkedHashMap<>();
+		zip.put("pack.mcmeta", ("{\"pack\":{\"pack_format\":" + packFormat + ",\"description\":\"\"}}").getBytes("UTF-8"));
+		for(int i = 0; i < entries.length; i += 2)
+		{
+			zip.put(entries[i], entries[i + 1].getBytes("UTF-8"));
+		}
+		final File file = TestFiles.zip(new File(this.folder, "port.zip"), zip);
+		return PackVerifier.verify(Collections.singletonList(file)).get(file);
+	}
+
+	@Test
+	public void acceptsNamesThatExistInTheZipsVersion() throws IOException
+	{
+		// 1.13 renamed 1.12's tallgrass texture to grass, but the grass model and texture exist in 1.13.
+		assertEquals(Collections.<String>emptyList(), this.verify(4,
+				ROOT + "blockstates/grass.json", "{\"variants\":{\"\":{\"model\":\"block/grass\"}}}",
+				ROOT + "models/block/tall_grass.json", "{\"parent\":\"block/cross\",\"textures\":{\"cross\":\"block/grass\"}}"
+		));
+		// 1.12 has a grass model, even though its grass texture was renamed in 1.13.
+		assertEquals(Collections.<String>emptyList(), this.verify(3,
+				ROOT + "blockstates/grass.json", "{\"variants\":{\"normal\":{\"model\":\"grass\"}}}",
+				ROOT + "models/block/tallgrass.json", "{\"parent\":\"block/cross\",\"textures\":{\"cross\":\"blocks/tallgrass\"}}"
+		));
+	}
+
+	@Test
+	public void reportsNamesOfOtherVersions() throws IOException
+	{
+		final List<String> problems = this.verify(3,
+				ROOT + "models/block/grass.json", "{\"parent\":\"block/cube_bottom_top\",\"textures\":{\"top\":\"blocks/grass_block_top\",\"side\":\"block/grass_side\"}}"
+		);
+		assertEquals(problems.toString(), 2, problems.size());
+		assertTrue(problems.get(0).contains("textures/blocks/grass_block_top.png") || problems.get(1).contains("textures/blocks/grass_block_top.png"));
+	}
+}
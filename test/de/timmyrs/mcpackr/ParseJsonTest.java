@@ -0,0 +1,34 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParseJsonTest
+{
+	@Test
+	public void parsesLenientlyLikeTheGame() throws Exception
+	{
+		final JsonObject o = ResourcePack.parseJson("{\n// A comment\nparent: 'block/cube_all', textures: {all: \"block/stone\"}}".getBytes("UTF-8"));
+		assertEquals("block/cube_all", o.get("parent").getAsString());
+		assertEquals("block/stone", o.get("textures").getAsJsonObject().get("all").getAsString());
+	}
+
+	@Test
+	public void decodesUtf8() throws Exception
+	{
+		final JsonObject o = ResourcePack.parseJson("{\"pack\":{\"description\":\"§aGrün ✓\"}}".getBytes("UTF-8"));
+		assertEquals("§aGrün ✓", o.get("pack").getAsJsonObject().get("description").getAsString());
+	}
+
+	@Test
+	public void parsesOtherElements() throws Exception
+	{
+		final JsonElement e = ResourcePack.parseJsonElement("[1, 2]".getBytes("UTF-8"));
+		assertTrue(e.isJsonArray());
+		assertEquals(2, e.getAsJsonArray().size());
+	}
+}
@@ -0,0 +1,80 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PngHeaderTest
+{
+	@Test
+	public void readsTheDimensions() throws IOException
+	{
+		final byte[] png = TestFiles.strip(16, 0xFF000000, 0xFFFFFFFF, 0xFF000000);
+		final PngHeader header = PngHeader.read(png);
+		assertNotNull(header);
+		assertEquals(16, header.width);
+		assertEquals(48, header.height);
+		// The first bytes are enough.
+		final PngHeader prefix = PngHeader.read(Arrays.copyOf(png, PngHeader.LENGTH));
+		assertNotNull(prefix);
+		assertEquals(16, prefix.width);
+		assertEquals(48, prefix.height);
+	}
+
+	@Test
+	public void rejectsTruncatedInput() throws IOException
+	{
+		final byte[] png = TestFiles.strip(16, 0xFF000000);
+		assertNull(PngHeader.read(Arrays.copyOf(png, PngHeader.LENGTH - 1)));
+		assertNull(PngHeader.read(new byte[0]));
+	}
+
+	@Test
+	public void rejectsOtherFormats() throws IOException
+	{
+		assertNull(PngHeader.read("{\"animation\":{\"frametime\":2}}".getBytes("UTF-8")));
+		// The start of a JPEG file.
+		final byte[] jpeg = new byte[PngHeader.LENGTH];
+		jpeg[0] = (byte) 0xFF;
+		jpeg[1] = (byte) 0xD8;
+		jpeg[2] = (byte) 0xFF;
+		jpeg[3] = (byte) 0xE0;
+		assertNull(PngHeader.read(jpeg));
+	}
+
+	@Test
+	public void rejectsAMissingOrInvalidIhdrChunk() throws IOException
+	{
+		final byte[] png = TestFiles.strip(16, 0xFF000000);
+		// Another chunk where the IHDR chunk should be.
+		final byte[] otherChunk = png.clone();
+		ByteBuffer.wrap(otherChunk).putInt(12, 0x74455874);
+		assertNull(PngHeader.read(otherChunk));
+		final byte[] wrongLength = png.clone();
+		ByteBuffer.wrap(wrongLength).putInt(8, 12);
+		assertNull(PngHeader.read(wrongLength));
+		final byte[] noWidth = png.clone();
+		ByteBuffer.wrap(noWidth).putInt(16, 0);
+		assertNull(PngHeader.read(noWidth));
+		final byte[] negativeHeight = png.clone();
+		ByteBuffer.wrap(negativeHeight).putInt(20, -16);
+		assertNull(PngHeader.read(negativeHeight));
+	}
+
+	@Test
+	public void imagesOnlyDecodeSupportedFormats() throws IOException
+	{
+		assertNull(Images.read("not an image".getBytes("UTF-8")));
+		final byte[] png = TestFiles.strip(4, 0xFFFF0000, 0xFF00FF00);
+		assertEquals(0xFF00FF00, Images.read(Images.split(png, 2, 4, 4).get(1)).getRGB(0, 0));
+		final PngHeader cropped = PngHeader.read(Images.crop(png, 4, 4));
+		assertNotNull(cropped);
+		assertEquals(4, cropped.height);
+	}
+}
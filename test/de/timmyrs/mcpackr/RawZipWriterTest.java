@@ -0,0 +1,148 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RawZipWriterTest
+{
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test
+	public void roundTripsStoredAndDeflatedEntries() throws IOException
+	{
+		final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("pack.mcmeta", "{\"pack\":{\"pack_format\":4}}".getBytes("UTF-8"));
+		entries.put("assets/minecraft/lang/\u00fcn\u00efc\u00f6d\u00e9.json", new String(new char[1000]).replace('\0', 'a').getBytes("UTF-8"));
+		entries.put("random.bin", new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, 1, 2, 3});
+		entries.put("empty.txt", new byte[0]);
+		final File file = TestFiles.zip(new File(this.folder, "test.zip"), entries);
+		try(RawZipFile zip = new RawZipFile(file))
+		{
+			assertEquals(ZipEntry.DEFLATED, zip.entries.get("assets/minecraft/lang/\u00fcn\u00efc\u00f6d\u00e9.json").method);
+			assertEquals(ZipEntry.STORED, zip.entries.get("random.bin").method);
+		}
+		final Map<String, byte[]> read = TestFiles.unzip(file);
+		assertEquals(entries.keySet(), read.keySet());
+		for(Map.Entry<String, byte[]> entry : entries.entrySet())
+		{
+			assertArrayEquals(entry.getKey(), entry.getValue(), read.get(entry.getKey()));
+		}
+		assertReadableByJdk(file, entries.size());
+	}
+
+	@Test
+	public void readsPrefixesOfEntries() throws IOException
+	{
+		final byte[] large = new byte[200000];
+		for(int i = 0; i < large.length; i++)
+		{
+			large[i] = (byte) (i * 31 / 7);
+		}
+		final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("large.bin", large);
+		entries.put("stored.bin", new byte[]{1, 2, 3});
+		entries.put("empty.txt", new byte[0]);
+		try(RawZipFile zip = new RawZipFile(TestFiles.zip(new File(this.folder, "test.zip"), entries)))
+		{
+			assertEquals(ZipEntry.DEFLATED, zip.entries.get("large.bin").method);
+			assertArrayEquals(Arrays.copyOf(large, 24), zip.readPrefix(zip.entries.get("large.bin"), 24));
+			assertArrayEquals(Arrays.copyOf(large, 100000), zip.readPrefix(zip.entries.get("large.bin"), 100000));
+			assertArrayEquals(large, zip.readPrefix(zip.entries.get("large.bin"), Integer.MAX_VALUE));
+			assertArrayEquals(new byte[]{1, 2}, zip.readPrefix(zip.entries.get("stored.bin"), 2));
+			assertArrayEquals(new byte[]{1, 2, 3}, zip.readPrefix(zip.entries.get("stored.bin"), 24));
+			assertArrayEquals(new byte[0], zip.readPrefix(zip.entries.get("empty.txt"), 24));
+		}
+	}
+
+	@Test
+	public void copiesEntriesWithoutChangingThem() throws IOException
+	{
+		final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.json", "{\"a\":[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16]}".getBytes("UTF-8"));
+		final File source = TestFiles.zip(new File(this.folder, "source.zip"), entries);
+		final File copy = new File(this.folder, "copy.zip");
+		try(RawZipFile zip = new RawZipFile(source);
+			RawZipWriter out = new RawZipWriter(new java.io.FileOutputStream(copy)))
+		{
+			out.copy(zip, zip.entries.get("a.json"), "b.json");
+		}
+		try(RawZipFile from = new RawZipFile(source);
+			RawZipFile to = new RawZipFile(copy))
+		{
+			assertTrue(to.entries.get("b.json").sameContentAs(from.entries.get("a.json")));
+			assertArrayEquals(from.readRaw(from.entries.get("a.json")), to.readRaw(to.entries.get("b.json")));
+			assertArrayEquals(entries.get("a.json"), to.read(to.entries.get("b.json")));
+		}
+	}
+
+	@Test
+	public void writesZip64WhenThereAreTooManyEntries() throws IOException
+	{
+		final int count = 0xFFFF + 100;
+		final File file = new File(this.folder, "many.zip");
+		try(RawZipWriter out = new RawZipWriter(new java.io.BufferedOutputStream(new java.io.FileOutputStream(file))))
+		{
+			for(int i = 0; i < count; i++)
+			{
+				out.write("assets/minecraft/" + i + ".txt", String.valueOf(i).getBytes("UTF-8"));
+			}
+		}
+		try(RawZipFile zip = new RawZipFile(file))
+		{
+			assertEquals(count, zip.entries.size());
+			assertEquals("0", new String(zip.read(zip.entries.get("assets/minecraft/0.txt")), "UTF-8"));
+			assertEquals(String.valueOf(count - 1), new String(zip.read(zip.entries.get("assets/minecraft/" + (count - 1) + ".txt")), "UTF-8"));
+		}
+		assertReadableByJdk(file, count);
+	}
+
+	private static void assertReadableByJdk(File file, int count) throws IOException
+	{
+		try(ZipFile zip = new ZipFile(file))
+		{
+			int entries = 0;
+			final Enumeration<? extends ZipEntry> e = zip.entries();
+			while(e.hasMoreElements())
+			{
+				final ZipEntry entry = e.nextElement();
+				final byte[] buffer = new byte[(int) entry.getSize()];
+				try(java.io.InputStream in = zip.getInputStream(entry))
+				{
+					int read = 0;
+					while(read < buffer.length)
+					{
+						read += in.read(buffer, read, buffer.length - read);
+					}
+				}
+				entries++;
+			}
+			assertEquals(count, entries);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds all ports of a generated pack with more than 100,000 entries under a constrained heap and checks the peak heap after garbage collection and the allocated bytes per entry against budgets, so buffering whole ports fails the build.
+ * The wall time is only printed, as it depends on the machine.
+ * Runs in its own surefire execution with -Xmx256m when the scale profile is active, e.g. {@code mvn -Pscale test}, see pom.xml.
+ */
+public class ScaleTest
+{
+	private static final int MODELS = 70000;
+	private static final int TEXTURES = 30000;
+	/**
+	 * The number of files with a version-specific file for each of the four pack formats.
+	 */
+	private static final int OVERRIDDEN = 2500;
+	private static final int ANIMATIONS = 8;
+	private static final int ANIMATION_SIZE = 256;
+	private static final int ANIMATION_FRAMES = 16;
+	private static final long MAX_HEAP = 320L * 1024 * 1024;
+	private static final long LIVE_HEAP_BUDGET = 96L * 1024 * 1024;
+	private static final long ALLOCATION_BUDGET_PER_ENTRY = 64 * 1024;
+	private File folder;
+	private File pack;
+	/**
+	 * The number of entries in each port.
+	 */
+	private int entries;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		this.pack = TestFiles.createPack(this.folder, "Huge", 4);
+		final byte[] texture = TestFiles.strip(16, 0xFF808080);
+		for(int i = 0; i < MODELS; i++)
+		{
+			TestFiles.write(this.pack, "assets/minecraft/models/block/gen_" + i + ".json", "{\"parent\":\"block/cube_all\",\"textures\":{\"all\":\"block/gen_" + (i % TEXTURES) + "\"}}");
+		}
+		for(int i = 0; i < TEXTURES; i++)
+		{
+			TestFiles.write(this.pack, "assets/minecraft/textures/block/gen_" + i + ".png", texture);
+		}
+		for(int i = 0; i < OVERRIDDEN; i++)
+		{
+			TestFiles.write(this.pack, "assets/minecraft/textures/gui/over_" + i + ".png", texture);
+			for(PackFormat packFormat : PackFormat.values())
+			{
+				TestFiles.write(this.pack, "assets/minecraft/textures/gui/over_" + i + ".png@" + packFormat.id, texture);
+			}
+		}
+		// Noise doesn't compress, so the animated textures are about as large as their pixels.
+		final Random random = new Random(0);
+		for(int i = 0; i < ANIMATIONS; i++)
+		{
+			final BufferedImage strip = new BufferedImage(ANIMATION_SIZE, ANIMATION_SIZE * ANIMATION_FRAMES, BufferedImage.TYPE_INT_ARGB);
+			for(int y = 0; y < strip.getHeight(); y++)
+			{
+				for(int x = 0; x < strip.getWidth(); x++)
+				{
+					strip.setRGB(x, y, random.nextInt() | 0xFF000000);
+				}
+			}
+			final File file = new File(this.pack, "assets/minecraft/textures/block/anim_" + i + ".png");
+			ImageIO.write(strip, "png", file);
+			TestFiles.write(this.pack, "assets/minecraft/textures/block/anim_" + i + ".png.mcmeta", "{\"animation\":{\"frametime\":2}}");
+		}
+		this.entries = MODELS + TEXTURES + OVERRIDDEN + ANIMATIONS * 2 + 1;
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test
+	public void packsHugePacksWithinBudget() throws Exception
+	{
+		assertTrue("The scale test has to run with a constrained heap, e.g. -Xmx256m.", Runtime.getRuntime().maxMemory() <= MAX_HEAP);
+		final File output = new File(this.folder, "out");
+		assertTrue(output.mkdir());
+		final Sampler sampler = new Sampler();
+		final long start = System.nanoTime();
+		sampler.start();
+		final Map<PackFormat, File> ports;
+		try
+		{
+			ports = new ResourcePack(this.pack).pack(output);
+		}
+		finally
+		{
+			sampler.interrupt();
+			sampler.join();
+		}
+		final long wallTime = (System.nanoTime() - start) / 1000000;
+		assertEquals(PackFormat.values().length, ports.size());
+		for(File port : ports.values())
+		{
+			try(RawZipFile zip = new RawZipFile(port))
+			{
+				assertEquals(port.getName(), this.entries, zip.entries.size());
+			}
+		}
+		final long allocatedPerEntry = sampler.allocated() / (this.entries * (long) ports.size());
+		System.out.println("Packed " + ports.size() + " x " + this.entries + " entries in " + wallTime + " ms with a peak heap after GC of " + (sampler.liveHeap / 1024 / 1024) + " MiB and " + allocatedPerEntry + " allocated bytes per entry.");
+		assertTrue("Peak heap after GC was " + sampler.liveHeap + " bytes", sampler.liveHeap <= LIVE_HEAP_BUDGET);
+		if(sampler.allocated() >= 0)
+		{
+			assertTrue("Allocated " + allocatedPerEntry + " bytes per entry", allocatedPerEntry <= ALLOCATION_BUDGET_PER_ENTRY);
+		}
+	}
+
+	/**
+	 * Samples the heap usage after the latest garbage collection and the bytes allocated by each thread, as threads of the pipeline come and go during the build.
+	 */
+	private static class Sampler extends Thread
+	{
+		private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		private final HashMap<Long, Long> allocatedByThread = new HashMap<>();
+		private final HashMap<Long, Long> allocatedBefore = new HashMap<>();
+		private volatile long liveHeap = 0;
+		private final boolean allocationSupported;
+
+		Sampler()
+		{
+			this.setDaemon(true);
+			this.allocationSupported = (this.threads instanceof com.sun.management.ThreadMXBean);
+			for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			{
+				pool.resetPeakUsage();
+			}
+			this.sampleAllocations(this.allocatedBefore);
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while(!this.isInterrupted())
+				{
+					this.sample();
+					Thread.sleep(20);
+				}
+			}
+			catch(InterruptedException ignored)
+			{
+			}
+			this.sample();
+		}
+
+		private synchronized void sample()
+		{
+			long liveHeap = 0;
+			for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			{
+				final MemoryUsage collectionUsage = pool.getCollectionUsage();
+				if(pool.getType() == MemoryType.HEAP && collectionUsage != null)
+				{
+					liveHeap += collectionUsage.getUsed();
+				}
+			}
+			this.liveHeap = Math.max(this.liveHeap, liveHeap);
+			this.sampleAllocations(this.allocatedByThread);
+		}
+
+		private void sampleAllocations(Map<Long, Long> allocated)
+		{
+			if(!this.allocationSupported)
+			{
+				return;
+			}
+			final long[] ids = this.threads.getAllThreadIds();
+			final long[] bytes = ((com.sun.management.ThreadMXBean) this.threads).getThreadAllocatedBytes(ids);
+			for(int i = 0; i < ids.length; i++)
+			{
+				if(bytes[i] >= 0 && ids[i] != this.getId())
+				{
+					allocated.put(ids[i], bytes[i]);
+				}
+			}
+		}
+
+		/**
+		 * @return The bytes allocated during the build by all threads except the sampler, or -1 if the JVM can't tell.
+		 */
+		synchronized long allocated()
+		{
+			if(!this.allocationSupported)
+			{
+				return -1;
+			}
+			long sum = 0;
+			for(Map.Entry<Long, Long> thread : this.allocatedByThread.entrySet())
+			{
+				final Long before = this.allocatedBefore.get(thread.getKey());
+				sum += thread.getValue() - (before == null ? 0 : before);
+			}
+			return sum;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedPackTest
+{
+	private File folder;
+	private File pack;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		this.pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(this.pack, "assets/minecraft/models/block/shiny.json", "{\"parent\":\"block/cube_all\",\"display\":{\"gui\":{\"scale\":[1,1,1]}}}");
+		for(int i = 0; i < 8; i++)
+		{
+			TestFiles.write(this.pack, "assets/minecraft/models/block/stone_" + i + ".json", "{\"parent\":\"block/shiny\",\"textures\":{\"all\":\"block/stone\"}}");
+		}
+		TestFiles.write(this.pack, "assets/minecraft/textures/block/stone.png", TestFiles.strip(16, 0xFF808080));
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	private File output(String name)
+	{
+		final File output = new File(this.folder, name);
+		assertTrue(output.mkdir());
+		return output;
+	}
+
+	@Test
+	public void workerProcessesUseTheSettingsOfTheResourcePack() throws IOException
+	{
+		final File cache = new File(this.folder, "cache");
+		final File expected = new ResourcePack(this.pack).setFlattenModels(true).pack(this.output("expected"), Collections.singletonList(PackFormat.V4)).get(PackFormat.V4);
+		final ResourcePack resourcePack = new ResourcePack(this.pack).setFlattenModels(true).setCache(cache, 1024 * 1024);
+		final Map<PackFormat, PackResult> sharded = resourcePack.packSharded(this.output("sharded"), Collections.singletonList(PackFormat.V4), 2, new LocalProcessShardWorker());
+		final Map<String, byte[]> expectedEntries = TestFiles.unzip(expected);
+		final Map<String, byte[]> shardedEntries = TestFiles.unzip(sharded.get(PackFormat.V4).file);
+		assertEquals(expectedEntries.keySet(), shardedEntries.keySet());
+		for(Map.Entry<String, byte[]> entry : expectedEntries.entrySet())
+		{
+			assertArrayEquals(entry.getKey(), entry.getValue(), shardedEntries.get(entry.getKey()));
+		}
+		// The worker processes have filled the cache.
+		assertTrue(cache.isDirectory() && Objects.requireNonNull(cache.list()).length > 0);
+	}
+
+	@Test
+	public void workerProcessesUseAllLayers() throws IOException
+	{
+		final LinkedHashMap<String, byte[]> base = new LinkedHashMap<>();
+		base.put("pack.mcmeta", Files.readAllBytes(new File(this.pack, "pack.mcmeta").toPath()));
+		base.put("assets/minecraft/textures/block/stone.png", TestFiles.strip(16, 0xFF808080));
+		base.put("assets/minecraft/textures/block/dirt.png", TestFiles.strip(16, 0xFF806040));
+		base.put("assets/minecraft/textures/block/dirt.png@3", TestFiles.strip(16, 0xFF604020));
+		final File addOn = new File(this.folder, "Add-on");
+		TestFiles.write(addOn, "assets/minecraft/textures/block/stone.png", TestFiles.strip(16, 0xFFFF0000));
+		TestFiles.write(addOn, "assets/minecraft/textures/block/dirt.png", TestFiles.strip(16, 0xFF00FF00));
+		final List<File> layers = Arrays.asList(TestFiles.zip(new File(this.folder, "Base.zip"), base), addOn);
+		final List<PackFormat> formats = Arrays.asList(PackFormat.V3, PackFormat.V4);
+		final Map<PackFormat, File> expected = new ResourcePack(layers).pack(this.output("expected"), formats);
+		final Map<PackFormat, PackResult> sharded = new ResourcePack(layers).packSharded(this.output("sharded"), formats, 2, new LocalProcessShardWorker());
+		for(PackFormat packFormat : formats)
+		{
+			final Map<String, byte[]> expectedEntries = TestFiles.unzip(expected.get(packFormat));
+			final Map<String, byte[]> shardedEntries = TestFiles.unzip(sharded.get(packFormat).file);
+			assertEquals(expectedEntries.keySet(), shardedEntries.keySet());
+			for(Map.Entry<String, byte[]> entry : expectedEntries.entrySet())
+			{
+				assertArrayEquals(entry.getKey(), entry.getValue(), shardedEntries.get(entry.getKey()));
+			}
+		}
+		// The add-on's dirt texture also replaces the base pack's version-specific one.
+		assertArrayEquals(TestFiles.strip(16, 0xFF00FF00), TestFiles.unzip(sharded.get(PackFormat.V3).file).get("assets/minecraft/textures/blocks/dirt.png"));
+	}
+
+	@Test
+	public void shardSettingsRoundTrip() throws IOException
+	{
+		final File cache = new File(this.folder, "cache");
+		final ResourcePack resourcePack = new ResourcePack(this.pack).setFlattenModels(true).setCache(cache, 1234);
+		assertEquals(resourcePack.getShardSettings(), new ResourcePack(this.pack).applyShardSettings(resourcePack.getShardSettings()).getShardSettings());
+		assertEquals(Collections.<String>emptyList(), new ResourcePack(this.pack).getShardSettings());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownShardSettingsAreRejected() throws IOException
+	{
+		new ResourcePack(this.pack).applyShardSettings(Arrays.asList("--flatten", "--something-new"));
+	}
+}
@@ -0,0 +1,79 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SourcePrefetcherTest
+{
+	private static final String TEXTURE = "assets/minecraft/textures/block/stone.png";
+	private static final String MODEL = "assets/minecraft/models/block/stone.json";
+	/**
+	 * Not a valid deflate stream, so inflating the texture fails.
+	 */
+	private static final byte[] CORRUPT = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+	private File folder;
+	private File zip;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		this.zip = new File(this.folder, "Pack.zip");
+		try(RawZipWriter out = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(this.zip))))
+		{
+			out.write("pack.mcmeta", "{\"pack\":{\"pack_format\":4,\"description\":\"\"}}".getBytes("UTF-8"));
+			out.write(MODEL, "{\"parent\":\"block/cube_all\",\"textures\":{\"all\":\"block/stone\"}}".getBytes("UTF-8"));
+			out.writeRaw(TEXTURE, ZipEntry.DEFLATED, 0x12345678L, 1000, 0, CORRUPT);
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test
+	public void onlyReadsTheCompressedBytesOfCopiedFiles() throws IOException
+	{
+		final PackIndex index = new PackIndex(Collections.singletonList(this.zip));
+		final List<String> files = Arrays.asList(TEXTURE, MODEL);
+		try(PackIndex.Source source = index.open();
+			SourcePrefetcher prefetcher = new SourcePrefetcher(source, files, 2, 2))
+		{
+			final SourcePrefetcher.Prefetched texture = prefetcher.next();
+			assertNotNull(texture.compressed);
+			assertArrayEquals(CORRUPT, texture.compressed.data);
+			final SourcePrefetcher.Prefetched model = prefetcher.next();
+			assertNull(model.compressed);
+			assertNotNull(model.read());
+		}
+	}
+
+	@Test
+	public void copiesFilesFromZipsWithoutInflatingThem() throws IOException
+	{
+		final File output = new File(this.folder, "out");
+		assertTrue(output.mkdir());
+		final File port = new ResourcePack(Collections.singletonList(this.zip)).pack(output, Collections.singletonList(PackFormat.V4)).get(PackFormat.V4);
+		try(RawZipFile zip = new RawZipFile(port))
+		{
+			assertArrayEquals(CORRUPT, zip.readRaw(zip.entries.get(TEXTURE)));
+		}
+	}
+}
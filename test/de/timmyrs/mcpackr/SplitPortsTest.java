@@ -0,0 +1,67 @@
+package de.timmyrs.mcpackr;
+
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitPortsTest
+{
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test
+	public void baseIsMarkedForTheLowestFormatAndOverlaysHoldTheDifferences() throws IOException
+	{
+		final File pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(pack, "assets/minecraft/textures/gui/widgets.png", new byte[]{1, 2, 3});
+		TestFiles.write(pack, "assets/minecraft/textures/gui/widgets.png@3", new byte[]{4, 5, 6});
+		final File output = new File(this.folder, "out");
+		assertTrue(output.mkdir());
+		final SplitPorts split = new ResourcePack(pack).packSplit(output, Arrays.asList(PackFormat.V3, PackFormat.V4));
+		final Map<String, byte[]> base = TestFiles.unzip(split.base);
+		final JsonObject packmeta = ResourcePack.parseJson(base.get("pack.mcmeta")).get("pack").getAsJsonObject();
+		assertEquals(3, packmeta.get("pack_format").getAsInt());
+		assertEquals("Test 1.11+", packmeta.get("description").getAsString());
+		assertFalse(base.containsKey("assets/minecraft/textures/gui/widgets.png"));
+		assertTrue(TestFiles.unzip(split.overlays.get(PackFormat.V3)).containsKey("assets/minecraft/textures/gui/widgets.png"));
+		assertTrue(TestFiles.unzip(split.overlays.get(PackFormat.V4)).containsKey("assets/minecraft/textures/gui/widgets.png"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void downscaledVersionsAreRejected() throws IOException
+	{
+		final File pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(pack, "assets/minecraft/textures/block/stone.png", TestFiles.strip(16, 0xFF808080));
+		new ResourcePack(pack).setDownscaledResolutions(8).packSplit(this.folder, Arrays.asList(PackFormat.V3, PackFormat.V4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void deltasAreRejected() throws IOException
+	{
+		final File pack = TestFiles.createPack(this.folder, "Pack", 4);
+		TestFiles.write(pack, "assets/minecraft/textures/block/stone.png", TestFiles.strip(16, 0xFF808080));
+		new ResourcePack(pack).setPreviousReleases(Collections.singletonMap(PackFormat.V4, new File(this.folder, "Pack (1.13+).zip"))).packSplit(this.folder, Arrays.asList(PackFormat.V3, PackFormat.V4));
+	}
+}
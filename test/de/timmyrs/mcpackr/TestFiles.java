@@ -0,0 +1,118 @@
+package de.timmyrs.mcpackr;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Creates the resource packs and zips the tests work on.
+ */
+class TestFiles
+{
+	static File createTempFolder() throws IOException
+	{
+		return Files.createTempDirectory("mcpackr-test").toFile();
+	}
+
+	static void delete(File file)
+	{
+		if(file.isDirectory())
+		{
+			for(File f : Objects.requireNonNull(file.listFiles()))
+			{
+				delete(f);
+			}
+		}
+		if(file.exists() && !file.delete())
+		{
+			throw new IllegalStateException("Failed to delete " + file.getPath());
+		}
+	}
+
+	static File write(File folder, String path, byte[] bytes) throws IOException
+	{
+		final File file = new File(folder, path);
+		if(!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs())
+		{
+			throw new IOException("Failed to create " + file.getParent());
+		}
+		Files.write(file.toPath(), bytes);
+		return file;
+	}
+
+	static File write(File folder, String path, String content) throws IOException
+	{
+		return write(folder, path, content.getBytes("UTF-8"));
+	}
+
+	/**
+	 * Creates a resource pack folder with a pack.mcmeta of the given pack format.
+	 */
+	static File createPack(File parent, String name, int packFormat) throws IOException
+	{
+		final File folder = new File(parent, name);
+		write(folder, "pack.mcmeta", "{\"pack\":{\"pack_format\":" + packFormat + ",\"description\":\"Test %mcversions%\"}}");
+		return folder;
+	}
+
+	/**
+	 * Writes a zip with the given entries using {@link RawZipWriter}.
+	 */
+	static File zip(File file, Map<String, byte[]> entries) throws IOException
+	{
+		try(RawZipWriter out = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(file))))
+		{
+			for(Map.Entry<String, byte[]> entry : entries.entrySet())
+			{
+				out.write(entry.getKey(), entry.getValue());
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * @return The entries of the given zip with their contents.
+	 */
+	static Map<String, byte[]> unzip(File file) throws IOException
+	{
+		final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>();
+		try(RawZipFile zip = new RawZipFile(file))
+		{
+			for(RawZipFile.Entry entry : zip.entries.values())
+			{
+				entries.put(entry.name, zip.read(entry));
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * @param frames The colour of each frame of a vertical strip of square frames.
+	 * @return A PNG of the strip.
+	 */
+	static byte[] strip(int size, int... frames) throws IOException
+	{
+		final BufferedImage image = new BufferedImage(size, size * frames.length, BufferedImage.TYPE_INT_ARGB);
+		for(int i = 0; i < frames.length; i++)
+		{
+			for(int y = 0; y < size; y++)
+			{
+				for(int x = 0; x < size; x++)
+				{
+					image.setRGB(x, i * size + y, frames[i]);
+				}
+			}
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,75 @@
+package de.timmyrs.mcpackr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ZipComparisonTest
+{
+	private File folder;
+	private File from;
+	private File to;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = TestFiles.createTempFolder();
+		final LinkedHashMap<String, byte[]> from = new LinkedHashMap<>();
+		from.put("model.json", "{\"x\":1,\"list\":[1,2],\"gone\":true}".getBytes("UTF-8"));
+		from.put("texture.png", new byte[]{1, 2, 3});
+		from.put("broken.png.mcmeta", "{\"animation\":{}}".getBytes("UTF-8"));
+		from.put("same.txt", "same".getBytes("UTF-8"));
+		from.put("removed.txt", "removed".getBytes("UTF-8"));
+		this.from = TestFiles.zip(new File(this.folder, "from.zip"), from);
+		final LinkedHashMap<String, byte[]> to = new LinkedHashMap<>();
+		to.put("added.txt", "added".getBytes("UTF-8"));
+		to.put("same.txt", "same".getBytes("UTF-8"));
+		to.put("texture.png", new byte[]{1, 2, 4});
+		to.put("model.json", "{\"x\":2,\"list\":[1],\"new\":\"y\"}".getBytes("UTF-8"));
+		to.put("broken.png.mcmeta", "{\"animation\":".getBytes("UTF-8"));
+		this.to = TestFiles.zip(new File(this.folder, "to.zip"), to);
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestFiles.delete(this.folder);
+	}
+
+	@Test
+	public void findsAddedRemovedAndChangedEntries() throws IOException
+	{
+		final ZipComparison comparison = ZipComparison.compare(this.from, this.to);
+		assertEquals(Collections.singletonList("added.txt"), comparison.added);
+		assertEquals(Collections.singletonList("removed.txt"), comparison.removed);
+		assertEquals(Arrays.asList("broken.png.mcmeta", "model.json", "texture.png"), comparison.changed);
+		assertTrue(comparison.jsonDifferences.isEmpty());
+		assertFalse(comparison.isEmpty());
+		assertEquals("+ added.txt\n- removed.txt\n~ broken.png.mcmeta\n~ model.json\n~ texture.png\n", comparison.toString());
+		assertTrue(ZipComparison.compare(this.to, this.to).isEmpty());
+	}
+
+	@Test
+	public void listsTheDifferencesOfChangedJson() throws IOException
+	{
+		final ZipComparison comparison = ZipComparison.compare(this.from, this.to, true);
+		assertEquals(new HashSet<>(Arrays.asList("broken.png.mcmeta", "model.json")), comparison.jsonDifferences.keySet());
+		assertEquals(Arrays.asList("/x: 1 -> 2", "/list/1: 2 -> null", "/gone: true -> null", "/new: null -> \"y\""), comparison.jsonDifferences.get("model.json"));
+		final List<String> broken = comparison.jsonDifferences.get("broken.png.mcmeta");
+		assertEquals(1, broken.size());
+		assertTrue(broken.get(0), broken.get(0).startsWith("Not valid JSON: "));
+		assertTrue(comparison.toString().contains("~ model.json\n    /x: 1 -> 2\n"));
+	}
+}